@@ -27,6 +27,7 @@ Description:
 
 
 import java.util.LinkedList;
+import java.util.SplittableRandom;
 
 
 /** Ant Model - Represents an individual agent
@@ -47,7 +48,7 @@ import java.util.LinkedList;
 * information (e.g. density)
 * 
 * @author      Antnio Fonseca
-* @version     1.7
+* @version     1.8
 * @since       1.0
 * */
 public class Ant {
@@ -57,6 +58,8 @@ private Item load;
 private Heap load_heap;
 private int x,y;
 private int xsize, ysize;
+private int bx, by, bw, bh;		// region of the grid where the ant jumps
+private int jump = -1;				// jump out of the region left for later: -1 none, 1 to an item, 0 to a free cell
 private int speed;
 private int max_speed;
 private int direction;
@@ -76,6 +79,12 @@ private int fail;
 private int has_load;
 private Grid grid;
 private Configuration conf;
+private SplittableRandom random;		// generator of this ant, split from the configuration
+
+private static final int TRIES = 32;	// random cells tried inside the region before scanning its cells
+
+private int[] cand, keys;				// cells scored together when picking in batches
+private double[] dens;
 
 
 /******** Constructor **********************************************************************************************/
@@ -88,29 +97,33 @@ public Ant(Grid grid, Configuration conf) {
 
 	this.grid = grid;
 	this.conf = conf;
-	this.x = (int)Math.random()*conf.getxsize();
-	this.y = (int)Math.random()*conf.getysize();
+	this.random = conf.split();
+	this.x = (int)random.nextDouble()*conf.getxsize();
+	this.y = (int)random.nextDouble()*conf.getysize();
 	this.xsize = this.conf.getxsize();
 	this.ysize = this.conf.getysize();
+	this.setBounds(0, 0, this.xsize, this.ysize);
 	this.scatter();
 	this.load = grid.getItemAt(this.x,this.y);
-	this.load.setPicked(true);
-	this.has_load = 1;
-	grid.remove_item(this.x,this.y);
-	this.d_max = Math.sqrt((double)this.load.getData().size());
+	if (this.load != null) {
+		this.load.setPicked(true);
+		this.has_load = 1;
+		grid.remove_item(this.x,this.y);
+	}
+	this.d_max = Math.sqrt((double)conf.getnkeys());
 	this.fail = 0;
-	this.max_carry = (int)(conf.getMaxCarryLow() * Math.random()* conf.getMaxCarryRange());
-	this.speed = (int)(conf.getSpeedLow()+ Math.random() * conf.getSpeedRange());
+	this.max_carry = (int)(conf.getMaxCarryLow() * random.nextDouble()* conf.getMaxCarryRange());
+	this.speed = (int)(conf.getSpeedLow()+ random.nextDouble() * conf.getSpeedRange());
 	this.max_speed = conf.getMaxSpeed();
-	this.p_load = conf.getPLoadLow()+ Math.random() * conf.getPLoadRange();
-	this.p_drop = conf.getPDropLow()+ Math.random() * conf.getPDropRange();
-	this.p_destroy = conf.getPDestroyLow() + Math.random() * conf.getPDestroyRange();
-	this.p_direction = conf.getPDirectionLow() + Math.random() * conf.getPDirectionRange();
-	this.t_create = conf.getTCreateLow() + Math.random() * conf.getTCreateRange();
-	this.t_remove = conf.getTRemoveLow() + Math.random() * conf.getTRemoveRange();
+	this.p_load = conf.getPLoadLow()+ random.nextDouble() * conf.getPLoadRange();
+	this.p_drop = conf.getPDropLow()+ random.nextDouble() * conf.getPDropRange();
+	this.p_destroy = conf.getPDestroyLow() + random.nextDouble() * conf.getPDestroyRange();
+	this.p_direction = conf.getPDirectionLow() + random.nextDouble() * conf.getPDirectionRange();
+	this.t_create = conf.getTCreateLow() + random.nextDouble() * conf.getTCreateRange();
+	this.t_remove = conf.getTRemoveLow() + random.nextDouble() * conf.getTRemoveRange();
 	this.kd = conf.getKd();
 	this.kp = conf.getKp();
-	this.direction = (int)Math.random()*8;
+	this.direction = (int)random.nextDouble()*8;
 	this.memory_h = new LinkedList<Heap>();
 	this.memory_i = new LinkedList<Item>();
 }
@@ -149,6 +162,33 @@ public void setXY(int x, int y) {
 	this.y = y;
 }
 
+/** Get the x coordinate of this ant
+* @return coordinate
+*/
+public int getX() {
+	return this.x;
+}
+
+/** Get the y coordinate of this ant
+* @return coordinate
+*/
+public int getY() {
+	return this.y;
+}
+
+/** Set the region of the grid where this ant jumps randomly
+* @param x0 the first x coordinate of the region
+* @param y0 the first y coordinate of the region
+* @param w the width of the region
+* @param h the height of the region
+*/
+public void setBounds(int x0, int y0, int w, int h) {
+	this.bx = x0;
+	this.by = y0;
+	this.bw = w;
+	this.bh = h;
+}
+
 
 /******** pick, drop & step: the three actions ********************************************************************************/
 
@@ -175,13 +215,54 @@ private double pdrop(double f) {
 * @return report on the success of pickup operation
 * */
 public boolean pick_lumer_faieta() {
-	if (grid.occupied_item(this.x,this.y)) {	
-    double f = grid.densityAt(this.x,this.y, grid.getItemAt(this.x, this.y));
-	if (Math.random() < ppick(f)) {
-			this.load = grid.getItemAt(this.x,this.y);
+	Item it = grid.getItemAt(this.x,this.y);
+	if (it != null) {	
+    double f = grid.densityAt(this.x,this.y, it);
+	if (random.nextDouble() < ppick(f) && grid.take_item(this.x,this.y,it)) {
+			this.load = it;
+			this.load.setPicked(true);
+			updateMemoryItem(this.load);
+			return true;
+		}
+	}
+	return false;
+}
+
+
+/** Try to pick up a item according to the Lumer and Faieta algorithm, scoring several cells at once.
+* The current cell and the cells of k - 1 random jumps are scored in one pass of the grid and
+* tried in order, the ant stays on the cell of the picked item or on the last cell scored.
+* The jumps stop when the region has no item left, the cells of other regions are not scored.
+* @param k the number of cells scored
+* @return report on the success of pickup operation
+* */
+public boolean pick_lumer_faieta_batch(int k) {
+	if (this.cand == null || this.cand.length < k) {
+		this.cand = new int[k];
+		this.keys = new int[k];
+		this.dens = new double[k];
+	}
+	this.cand[0] = this.y * xsize + this.x;
+	for (int n = 1; n < k; n++) {
+		move_random(true);
+		if (isJumping()) {
+			k = n;
+			break;
+		}
+		this.cand[n] = this.y * xsize + this.x;
+	}
+	grid.densityBatch(this.cand, k, this.keys, this.dens);
+	for (int n = 0; n < k; n++) {
+		if (this.keys[n] == -1) continue;
+		int x_coor = this.cand[n] % xsize;
+		int y_coor = this.cand[n] / xsize;
+		Item it = grid.getItems().get(this.keys[n]);
+		if (random.nextDouble() < ppick(this.dens[n]) && grid.take_item(x_coor,y_coor,it)) {
+			this.x = x_coor;
+			this.y = y_coor;
+			this.load = it;
 			this.load.setPicked(true);
 			updateMemoryItem(this.load);
-			grid.remove_item(this.x,this.y);
 			return true;
 		}
 	}
@@ -194,10 +275,8 @@ public boolean pick_lumer_faieta() {
 */
 public boolean drop_lumer_faieta() {
 	double f = grid.densityAt(this.x,this.y,this.load);	
-	if ((fail == 100) || (Math.random() < pdrop(f))) {
-		if (!grid.occupied_item(this.x,this.y)) {
-			this.load.setPicked(false);
-			grid.put_item(this.x, this.y, this.load);
+	if ((fail == 100) || (random.nextDouble() < pdrop(f))) {
+		if (!grid.occupied_item(this.x,this.y) && grid.claim_item(this.x, this.y, this.load)) {
 			this.load = null;
 			fail = 0;
 			return true;
@@ -227,14 +306,14 @@ public void move_lumer_faieta(boolean f, Configuration.Models model) {
 							}
 		
 	case LUMERFAIETA_S : 	int step = 2;
-							boolean loop = true;
+							boolean loop = grid.countItemCells(f) > 0;
 							while (loop) {
 								for (int i = 0; i< this.max_speed; i++) {
-									int xpart = (int)Math.round(step * Math.random());
+									int xpart = (int)Math.round(step * random.nextDouble());
 									int ypart = step - xpart;
 												
-									if (Math.random() < 0.5) xpart = -xpart;
-									if (Math.random() < 0.5) ypart = -ypart;
+									if (random.nextDouble() < 0.5) xpart = -xpart;
+									if (random.nextDouble() < 0.5) ypart = -ypart;
 												
 									int x_coor = this.x + xpart;
 									int	y_coor = this.y + ypart;
@@ -256,36 +335,88 @@ public void move_lumer_faieta(boolean f, Configuration.Models model) {
 	}}
 
 
-/** Moves an ant from its current position randomly
-* which can be free or occupied according to the boolean flag f 
+/** Moves an ant from its current position randomly inside its region
+* which can be free or occupied according to the boolean flag f.
+* Inside a region a bounded number of random cells is tried, then the cells of the region
+* are scanned to find one. When the region has no such position the ant stays and its jump
+* out of the region is left for {@link #jump()}. Without region the position is taken from
+* the index of cells of the grid, and the ant stays if the grid has none.
 * @param f flag for occupied or free position, m model of moving
 */
 public void move_random(boolean f){
-	boolean loop = true;
-	while (loop) {
-		int x_coor = (int)(Math.random()*conf.getxsize());
-		int	y_coor = (int)(Math.random()*conf.getysize());
-		if (grid.occupied_item(x_coor,y_coor) == f) {
-			this.x = x_coor;
-			this.y = y_coor;
-			loop = false;
+	if (this.bw < xsize || this.bh < ysize) {
+		for (int i = 0; i < TRIES; i++) {
+			int x_coor = this.bx + random.nextInt(this.bw);
+			int	y_coor = this.by + random.nextInt(this.bh);
+			if (grid.occupied_item(x_coor,y_coor) == f) {
+				this.x = x_coor;
+				this.y = y_coor;
+				return;
+			}
+		}
+		int c = randomRegionCell(f);
+		if (c != -1) {
+			this.x = c % xsize;
+			this.y = c / xsize;
 		}
+		else this.jump = f ? 1 : 0;
+		return;
+	}
+	int c = grid.randomItemCell(f, this.random);
+	if (c != -1) {
+		this.x = c % xsize;
+		this.y = c / xsize;
 	}
 }
 
-/** Scatter the ants over the grid
+/** Find a random cell of the region of the ant, free or occupied, all such cells with the same probability.
+* The cells of the region are read directly, not counted from the shared counts of the grid,
+* so the cell found does not depend on the updates of the other regions stepped at the same time.
+* @param f flag for occupied or free cell
+* @return the cell, -1 if the region has no such cell
+*/
+private int randomRegionCell(boolean f) {
+	int n = 0;
+	for (int j = 0; j < this.bh; j++)
+		for (int i = 0; i < this.bw; i++)
+			if (grid.occupied_item(this.bx + i, this.by + j) == f) n++;
+	if (n == 0) return -1;
+	int r = random.nextInt(n);
+	for (int j = 0; j < this.bh; j++)
+		for (int i = 0; i < this.bw; i++)
+			if (grid.occupied_item(this.bx + i, this.by + j) == f && r-- == 0) return (this.by + j) * xsize + this.bx + i;
+	return -1;
+}
+
+/** Check if the ant found no cell in its region and waits to jump out of it
+* @return true if a jump is left for {@link #jump()}
+*/
+public boolean isJumping() {
+	return this.jump != -1;
+}
+
+/** Make the jump left by {@link #move_random(boolean)}, to a random cell of the whole grid free or occupied
+* as the region lacked. The cell is counted on the grid, so the jump does not depend on the order in which
+* the regions were stepped. The grid must not change during the jump.
+*/
+public void jump() {
+	if (this.jump == -1) return;
+	int c = grid.countedItemCell(this.jump == 1, this.random);
+	this.jump = -1;
+	if (c != -1) {
+		this.x = c % xsize;
+		this.y = c / xsize;
+	}
+}
+
+/** Scatter the ants over the cells of the grid occupied by items
 *
 */					
 public void scatter() {
-	
-	done: while(true) {
-			int x_coor = (int)(Math.random()*conf.getxsize());
-			int	y_coor = (int)(Math.random()*conf.getysize());
-			if (grid.occupied_item(x_coor,y_coor) == true) {
-				this.x = x_coor;
-				this.y = y_coor;
-				break done;
-			}
+	int c = grid.randomItemCell(true, this.random);
+	if (c != -1) {
+		this.x = c % xsize;
+		this.y = c / xsize;
 	}
 }
 
@@ -301,7 +432,7 @@ public void move_ant_class(){
 		this.y = h.getY() + 1;
 	}
 	else{
-		if (Math.random()< p_direction) this.direction = (int)(Math.random()*8);
+		if (random.nextDouble()< p_direction) this.direction = (int)(random.nextDouble()*8);
 		switch (this.direction){
 			case 0 : this.y -= this.speed; break;
 			case 1 : this.x += this.speed; this.y -= this.speed; break;
@@ -333,7 +464,7 @@ public void pick_ant_class(){
 				if (x_coor >= xsize) x_coor = x_coor%xsize;
 				if (y_coor < 0) y_coor = ysize + y_coor%ysize;
 				if (y_coor >= ysize) y_coor = y_coor%ysize;
-				if (grid.occupied_item(x_coor, y_coor) && Math.random()< this.p_load ){
+				if (grid.occupied_item(x_coor, y_coor) && random.nextDouble()< this.p_load ){
 					this.load = grid.getItemAt(x_coor, y_coor);
 					this.load.setPicked(true);
 					this.has_load=1;
@@ -344,7 +475,7 @@ public void pick_ant_class(){
 					Heap h = grid.heapAt(x_coor, y_coor);
 					this.updateMemoryHeap(h);
 					if (h.getSize()==2) {
-						if(Math.random() < this.p_destroy) {
+						if(random.nextDouble() < this.p_destroy) {
 							LinkedList<Item> l = h.getItems();
 							this.load = l.removeLast();
 							this.load.setPicked(true);
@@ -381,7 +512,7 @@ public void pick_ant_class_heap(){
 				if (y_coor >= ysize) y_coor = y_coor%ysize;
 				if (grid.occupied_heap(x_coor, y_coor)){
 					Heap h = grid.heapAt(x_coor, y_coor);
-					if (h.getPheromone() == 0 && this.load_heap==null && Math.random()< this.p_load) {
+					if (h.getPheromone() == 0 && this.load_heap==null && random.nextDouble()< this.p_load) {
 						this.load_heap = h;
 						this.load_heap.setPicked(true);
 						grid.remove_heap(x_coor, y_coor);
@@ -406,7 +537,7 @@ public void drop_ant_class(){
 				if (y_coor >= ysize) y_coor = y_coor%ysize;
 				
 				if (!grid.occupied(x_coor, y_coor)) {
-					if ((Math.random()< this.p_drop || this.has_load > this.max_carry)){
+					if ((random.nextDouble()< this.p_drop || this.has_load > this.max_carry)){
 						this.load.setPicked(false);
 						grid.put_item(x_coor, y_coor, this.load);
 						this.load = null;
@@ -457,14 +588,14 @@ public void drop_ant_class_heap(){
 					Heap h = grid.heapAt(x_coor, y_coor);
 					if (h.computeDistanceCenterMassVector(this.load_heap.getCenterMass())/this.d_max <= this.t_create){
 						grid.remove_heap(x_coor, y_coor);
-						h.putItems(this.load_heap.getItems());
+						h.putItems(this.load_heap);
 						grid.put_heap(x_coor, y_coor, h);
 						this.load_heap=null;
 						break done;
 					}
 				}
 				
-				else if (Math.random()<this.p_drop && !grid.occupied_heap(x_coor, y_coor) && !grid.occupied_item(x_coor, y_coor)){
+				else if (random.nextDouble()<this.p_drop && !grid.occupied_heap(x_coor, y_coor) && !grid.occupied_item(x_coor, y_coor)){
 					this.load_heap.setPicked(false);
 					this.load_heap.setPheromone(500);
 					grid.put_heap(x_coor, y_coor, this.load_heap);
@@ -484,11 +615,11 @@ public void drop(){
 		int step = 2;
 		done: while (true) {
 			for (int i = 0; i< 10; i++) {
-				int xpart = (int)Math.round(step * Math.random());
+				int xpart = (int)Math.round(step * random.nextDouble());
 				int ypart = step - xpart;
 							
-				if (Math.random() < 0.5) xpart = -xpart;
-				if (Math.random() < 0.5) ypart = -ypart;
+				if (random.nextDouble() < 0.5) xpart = -xpart;
+				if (random.nextDouble() < 0.5) ypart = -ypart;
 							
 				int x_coor = this.x + xpart;
 				int	y_coor = this.y + ypart;
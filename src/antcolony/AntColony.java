@@ -1,12 +1,24 @@
 package antcolony;
 
+import java.util.concurrent.RecursiveAction;
+
 /** Ant Colony - Represents a colony of agents
  * 
  * Each Ant Colony has a corresponding running configuration and
  * a corresponding running model.
+ * <p>
+ * The ants of the Lumer and Faieta models can be stepped in parallel,
+ * or by tiles of the grid, according to the schedule of the configuration.
+ * <p>
+ * The tiled schedule steps the tiles in the four phases of a checkerboard instead of giving each tile
+ * a copy of the sigma-wide borders of its neighbours: the tiles stepped at the same time are never
+ * neighbours and are wider than the neighbourhood read by the ants, so the cells a tile reads are not
+ * written meanwhile and no border has to be exchanged. Each ant is handed to the tile where it stands
+ * at the beginning of the tick, and the moves that may leave the tile are made after the four phases
+ * in the order of the ants, so a tiled run gives the same result for a seed with any number of threads.
  * 
  * @author      Antnio Fonseca
- * @version     1.0
+ * @version     1.1
  * @since       1.0
  * */
 public class AntColony {
@@ -18,6 +30,8 @@ public class AntColony {
 	private Configuration.Models model;
 	private Grid grid;
 	private int phase;
+	private Tiling tiling;					// tiles of the tiled schedule
+	private int[][] colors;					// tiles of each colour of the checkerboard
 
 	
 	
@@ -35,6 +49,16 @@ public class AntColony {
 		this.phase = 0;
 		this.ants = new Ant[this.conf.getnants()];
 		for (int i = 0; i < this.conf.getnants(); i++) ants[i] = new Ant(grid,conf);
+		this.tiling = new Tiling(conf.getxsize(), conf.getysize(), Math.max(conf.getTileSize(), 2 * conf.getSigma() + 1));
+		this.colors = new int[4][];
+		int[] count = new int[4];
+		for (int t = 0; t < tiling.getnTiles(); t++) count[tiling.getColor(t)]++;
+		for (int c = 0; c < 4; c++) this.colors[c] = new int[count[c]];
+		count = new int[4];
+		for (int t = 0; t < tiling.getnTiles(); t++) {
+			int c = tiling.getColor(t);
+			this.colors[c][count[c]++] = t;
+		}
 	}
 
 
@@ -57,52 +81,14 @@ public class AntColony {
 	public void sort(int tick) {
 		switch (model){
 		
-		case LUMERFAIETA_S : for (int a = 0; a< conf.getnants(); a++) {
-								if ( ants[a].hasLoad()) {
-									if (ants[a].drop_lumer_faieta() == true) 
-										ants[a].move_lumer_faieta(true,Configuration.Models.LUMERFAIETA_S);
-									}
-								else {
-									boolean f = false;
-									while (!f){
-										f = ants[a].pick_lumer_faieta();
-										ants[a].move_random(true);
-									}
-									ants[a].move_lumer_faieta(false,Configuration.Models.LUMERFAIETA_S);
-									}
-								}
-								break;
-								
-		case LUMERFAIETA_M : for (int a = 0; a< conf.getnants(); a++) {
-								if ( ants[a].hasLoad()) {
-									if (ants[a].drop_lumer_faieta() == true) 
-										ants[a].move_lumer_faieta(false,Configuration.Models.LUMERFAIETA_M);
-								}
-								else {
-									boolean f = false;
-									while (!f){
-										f = ants[a].pick_lumer_faieta();
-										ants[a].move_random(true);
-									}
-									ants[a].move_lumer_faieta(false,Configuration.Models.LUMERFAIETA_M);
-									}
-								}
-								break;
-								
-		case LUMERFAIETA_R : for (int a = 0; a< conf.getnants(); a++) {
-								if ( ants[a].hasLoad()){
-									if (ants[a].drop_lumer_faieta() == true) 
-										ants[a].move_random(false);
-									}
-								else {
-									boolean f = false;
-									while (!f){
-										f = ants[a].pick_lumer_faieta();
-										ants[a].move_random(true);
-									}
-									ants[a].move_random(false);
-								}
+		case LUMERFAIETA_S :
+		case LUMERFAIETA_M :
+		case LUMERFAIETA_R : if (conf.getSchedule() == Configuration.Schedules.TILED) sort_tiled();
+								else if (conf.getSchedule() == Configuration.Schedules.PARALLEL && conf.getThreads() > 1) {
+									int grain = Math.max(1, this.ants.length / (conf.getThreads() * 8));
+									conf.getPool().invoke(new AntBlock(0, this.ants.length, grain));
 								}
+								else for (int a = 0; a< conf.getnants(); a++) step_lumer_faieta(ants[a]);
 								break;
 								
 		case ANTCLASS1 		: 	phase = 0;
@@ -160,6 +146,171 @@ public class AntColony {
 	
 	
 	
+	/** One step of an ant according to the Lumer and Faieta model of this colony
+	 * @param ant the ant to step
+	 */
+	private void step_lumer_faieta(Ant ant) {
+		int m = act_lumer_faieta(ant);
+		if (m != -1) move_lumer_faieta(ant, m == 1);
+	}
+	
+	/** The action of an ant according to the Lumer and Faieta model of this colony, the drop
+	 * of its load or the search of an item to pick, without the move that follows it
+	 * @param ant the ant to step
+	 * @return -1 if the ant does not move, 1 if it moves to a cell occupied by an item, 0 to a free cell
+	 */
+	private int act_lumer_faieta(Ant ant) {
+		switch (model){
+		
+		case LUMERFAIETA_S : if ( ant.hasLoad()) {
+								if (ant.drop_lumer_faieta() == true) return 1;
+								}
+							else if (search_lumer_faieta(ant)) return 0;
+							return -1;
+								
+		case LUMERFAIETA_M :
+		case LUMERFAIETA_R : if ( ant.hasLoad()) {
+								if (ant.drop_lumer_faieta() == true) return 0;
+								}
+							else if (search_lumer_faieta(ant)) return 0;
+							return -1;
+		default :			return -1;
+		}
+	}
+	
+	/** The move of an ant after its action according to the Lumer and Faieta model of this colony
+	 * @param ant the ant to move
+	 * @param f flag for occupied or free position
+	 */
+	private void move_lumer_faieta(Ant ant, boolean f) {
+		if (model == Configuration.Models.LUMERFAIETA_R) ant.move_random(f);
+		else ant.move_lumer_faieta(f, model);
+	}
+	
+	/** One tick of the Lumer and Faieta model with the tiled schedule.
+	 * The ants are handed to the tile where they stand and the tiles are stepped
+	 * in the four phases of the checkerboard. The moves that may leave the tile, the steps
+	 * of the LUMERFAIETA_S and LUMERFAIETA_M models and the jumps of the ants whose tile had no
+	 * suitable cell, are made after the four phases in the order of the ants.
+	 */
+	private void sort_tiled() {
+		int n = tiling.getnTiles();
+		int[] tile = new int[this.ants.length];
+		int[] start = new int[n + 1];
+		for (int a = 0; a < this.ants.length; a++) {
+			tile[a] = tiling.tileAt(ants[a].getX(), ants[a].getY());
+			start[tile[a] + 1]++;
+		}
+		for (int t = 0; t < n; t++) start[t + 1] += start[t];
+		int[] order = new int[this.ants.length];
+		int[] next = start.clone();
+		for (int a = 0; a < this.ants.length; a++) {
+			int t = tile[a];
+			order[next[t]++] = a;
+			ants[a].setBounds(tiling.getX0(t), tiling.getY0(t), tiling.getWidth(t), tiling.getHeight(t));
+		}
+		int[] moves = new int[this.ants.length];
+		for (int c = 0; c < 4; c++) {
+			if (conf.getThreads() > 1 && this.colors[c].length > 1)
+				conf.getPool().invoke(new TileBlock(this.colors[c], order, start, moves, 0, this.colors[c].length));
+			else for (int t : this.colors[c]) step_tile(order, start, moves, t);
+		}
+		for (int a = 0; a < this.ants.length; a++) {
+			ants[a].setBounds(0, 0, conf.getxsize(), conf.getysize());
+			ants[a].jump();
+			if (moves[a] != -1) move_lumer_faieta(ants[a], moves[a] == 1);
+		}
+	}
+	
+	/** Step the ants of one tile, the moves that may leave the tile are left for later
+	 * @param order the ants sorted by tile
+	 * @param start the position of the first ant of each tile in the order
+	 * @param moves the array where the move left for each ant is stored, -1 for none
+	 * @param t the index of the tile
+	 */
+	private void step_tile(int[] order, int[] start, int[] moves, int t) {
+		for (int k = start[t]; k < start[t + 1]; k++) {
+			int a = order[k];
+			moves[a] = act_lumer_faieta(ants[a]);
+			if (moves[a] != -1 && model == Configuration.Models.LUMERFAIETA_R) {
+				ants[a].move_random(moves[a] == 1);
+				moves[a] = -1;
+			}
+		}
+	}
+	
+	/** The search of an unloaded ant for an item to pick, jumping between cells occupied by items.
+	 * The search is bounded by the pick budget of the configuration, an ant that spends it
+	 * keeps searching from where it stands in the next tick. An ant whose tile has no items
+	 * also stops, it jumps out of the tile at the end of the tick and searches from there in the next tick.
+	 * @param ant the ant searching
+	 * @return true if the ant picked an item
+	 */
+	private boolean search_lumer_faieta(Ant ant) {
+		int budget = conf.getPickBudget();
+		int batch = conf.getPickBatch();
+		boolean f = false;
+		for (int n = 0; !f && (budget == 0 || n < budget) && grid.countItemCells(true) > 0 && !ant.isJumping(); n += batch) {
+			if (batch > 1) f = ant.pick_lumer_faieta_batch(batch);
+			else f = ant.pick_lumer_faieta();
+			ant.move_random(true);
+		}
+		return f;
+	}
+	
+	/** A block of tiles of the same colour stepped on the pool of the configuration, one task per tile
+	 */
+	private class TileBlock extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private int[] tiles, order, start, moves;
+		private int lo, hi;
+
+		TileBlock(int[] tiles, int[] order, int[] start, int[] moves, int lo, int hi) {
+			this.tiles = tiles;
+			this.order = order;
+			this.start = start;
+			this.moves = moves;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		protected void compute() {
+			if (hi - lo <= 1) {
+				for (int i = lo; i < hi; i++) step_tile(order, start, moves, tiles[i]);
+			}
+			else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new TileBlock(tiles, order, start, moves, lo, mid), new TileBlock(tiles, order, start, moves, mid, hi));
+			}
+		}
+	}
+	
+	/** A block of ants stepped on the pool of the configuration, split in halves until it is small enough.
+	 * The ants claim the cells where they pick and drop items, so each item is picked by one ant only.
+	 */
+	private class AntBlock extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private int lo, hi, grain;
+
+		AntBlock(int lo, int hi, int grain) {
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+
+		protected void compute() {
+			if (hi - lo <= grain) {
+				for (int a = lo; a < hi; a++) step_lumer_faieta(ants[a]);
+			}
+			else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new AntBlock(lo, mid, grain), new AntBlock(mid, hi, grain));
+			}
+		}
+	}
+	
 	/** Make the ants drop all the loads
 	 */
 	public void drop(){
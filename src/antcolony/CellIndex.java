@@ -0,0 +1,166 @@
+package antcolony;
+
+import java.util.SplittableRandom;
+
+/** This class splits the cells of the grid in two sets, the marked cells and the unmarked cells,
+ * so a random cell of either set is found at once whatever the number of cells in each set.
+ * <p>
+ * The cells are kept in one permutation array with the marked cells first, and the position of each cell
+ * in the array. Marking or unmarking a cell swaps it with the first cell of the other set,
+ * so every operation takes constant time.
+ * <p>
+ * So the index can be updated by ants stepped in parallel, the cells are split in stripes by the low bits of their
+ * number, each stripe with its own permutation and its own lock. A random cell is taken from a stripe chosen
+ * with the probability of its share of the set, so all the cells of the set keep the same probability.
+ * With one stripe the index behaves as a single permutation.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.1
+ * @since       1.0
+ * */
+public class CellIndex {
+
+	private static final int RETRIES = 8;	// draws repeated when a stripe changed during the draw
+
+	private Stripe[] stripes;			// stripes of the cells, the stripe of a cell is its number modulo their count
+	private int bits;					// bits of the cell number that select the stripe
+
+/*********** Constructor ****************************************************************************/
+
+	/** Constructor with all the cells unmarked in one stripe
+	 * @param n the number of cells
+	 * */
+	public CellIndex(int n) {
+		this(n, 1);
+	}
+
+	/** Constructor with all the cells unmarked
+	 * @param n the number of cells
+	 * @param count the number of stripes, rounded up to a power of two
+	 * */
+	public CellIndex(int n, int count) {
+		this.bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, Math.min(count, n)) - 1);
+		int s = 1 << bits;
+		this.stripes = new Stripe[s];
+		for (int k = 0; k < s; k++) this.stripes[k] = new Stripe((n - k + s - 1) / s);
+	}
+
+/*********** Access & Modification Functions ****************************************************************************/
+
+	/** Unmark all the cells
+	 * */
+	public void clear() {
+		for (Stripe s : stripes) s.clear();
+	}
+
+	/** Mark a cell
+	 * @param c the cell
+	 * */
+	public void mark(int c) {
+		stripes[c & (stripes.length - 1)].mark(c >>> bits);
+	}
+
+	/** Unmark a cell
+	 * @param c the cell
+	 * */
+	public void unmark(int c) {
+		stripes[c & (stripes.length - 1)].unmark(c >>> bits);
+	}
+
+	/** Get the number of marked cells
+	 * @return the number of cells
+	 * */
+	public int getMarked() {
+		int sum = 0;
+		for (Stripe s : stripes) sum += s.marked;
+		return sum;
+	}
+
+	/** Get the number of unmarked cells
+	 * @return the number of cells
+	 * */
+	public int getUnmarked() {
+		int sum = 0;
+		for (Stripe s : stripes) sum += s.cells.length - s.marked;
+		return sum;
+	}
+
+	/** Get a random cell, all the cells of the set with the same probability
+	 * @param m true for a marked cell, false for an unmarked cell
+	 * @param random the generator to use
+	 * @return the cell, -1 if the set is empty
+	 * */
+	public int sample(boolean m, SplittableRandom random) {
+		for (int t = 0; t < RETRIES; t++) {
+			int total = m ? getMarked() : getUnmarked();
+			if (total == 0) return -1;
+			int r = random.nextInt(total);
+			for (int k = 0; k < stripes.length; k++) {
+				Stripe s = stripes[k];
+				int size = m ? s.marked : s.cells.length - s.marked;
+				if (r >= size) {
+					r -= size;
+					continue;
+				}
+				int c = s.get(m, r);
+				if (c != -1) return (c << bits) | k;
+				break;
+			}
+		}
+		return -1;
+	}
+
+	/** The cells of one stripe, numbered inside the stripe
+	 * */
+	private static class Stripe {
+
+		private int[] cells;				// the marked cells followed by the unmarked cells
+		private int[] pos;					// position of each cell in the array
+		private volatile int marked;		// number of marked cells
+
+		Stripe(int n) {
+			this.cells = new int[n];
+			this.pos = new int[n];
+			clear();
+		}
+
+		synchronized void clear() {
+			for (int c = 0; c < cells.length; c++) {
+				cells[c] = c;
+				pos[c] = c;
+			}
+			this.marked = 0;
+		}
+
+		synchronized void mark(int c) {
+			if (pos[c] < marked) return;
+			swap(pos[c], marked);
+			marked++;
+		}
+
+		synchronized void unmark(int c) {
+			if (pos[c] >= marked) return;
+			marked--;
+			swap(pos[c], marked);
+		}
+
+		/** Get a cell of a set by its rank
+		 * @return the cell, -1 if the set has no cell of that rank
+		 * */
+		synchronized int get(boolean m, int r) {
+			if (m) return r < marked ? cells[r] : -1;
+			else return marked + r < cells.length ? cells[marked + r] : -1;
+		}
+
+		/** Swap two positions of the permutation
+		 * */
+		private void swap(int i, int j) {
+			int a = cells[i], b = cells[j];
+			cells[i] = b;
+			cells[j] = a;
+			pos[b] = i;
+			pos[a] = j;
+		}
+	}
+
+}
@@ -1,6 +1,8 @@
 package antcolony;
 
 import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The Configuration class is an auxiliary class to store all the parameters
@@ -198,6 +200,104 @@ public class Configuration {
 		LUMERFAIETA_R};
 	private Models model = Models.ANTCLASS1;
 	
+	/**
+	 * This Schedules class determines how the ants of the colony are stepped in each tick.
+	 * 
+	 * @version     1.0
+	 * @since       1.0
+	 * */
+	public enum Schedules {
+		/**
+		 * The ants are stepped one after the other on the thread of the simulation.
+		 * 
+		 * @since       1.0
+		 * */
+		SERIAL,
+		/**
+		 * The ants are stepped concurrently on the pool of the configuration, claiming the cells
+		 * where they pick and drop items so that no two ants take or drop on the same cell.
+		 * Only the Lumer and Faieta models are stepped in parallel, the AntClass models
+		 * are always stepped serially. The order of the ants on the grid depends on the timing
+		 * of the threads, so a run is not repeated by its seed.
+		 * 
+		 * @since       1.0
+		 * */
+		PARALLEL,
+		/**
+		 * The grid is split in tiles of the <b>tile size</b> of the configuration, each tile owning the ants
+		 * that stand on it, see {@link Tiling}. The tiles are stepped in four phases of a checkerboard,
+		 * the tiles of a phase in parallel on the pool of the configuration, so that tiles stepped
+		 * at the same time are never neighbours. The ants jump only inside their tile and are handed
+		 * to the tile where they stand at the beginning of each tick. The moves that may leave a tile
+		 * are made after the four phases in the order of the ants, so the result of a seed does not
+		 * depend on the number of threads.
+		 * Only the Lumer and Faieta models are tiled, the AntClass models are always stepped serially.
+		 * 
+		 * @since       1.0
+		 * */
+		TILED};
+	private Schedules schedule = Schedules.SERIAL;
+	
+	/**
+	 * This Distances class determines how the distances between the items of the dataset
+	 * are provided to the simulation.
+	 * 
+	 * @version     1.0
+	 * @since       1.0
+	 * */
+	public enum Distances {
+		/**
+		 * All the distances are computed before the simulation and stored in a {@link DistanceMatrix}.
+		 * 
+		 * @since       1.0
+		 * */
+		MATRIX,
+		/**
+		 * The distances are computed on demand and kept in a bounded cache of the most recently used pairs,
+		 * see {@link LazyDistanceMatrix}.
+		 * 
+		 * @since       1.0
+		 * */
+		LAZY,
+		/**
+		 * The distances are computed once per dataset and distance measure, stored in a file of the
+		 * <b>cache directory</b> and mapped in memory by the following runs, see {@link MappedDistanceMatrix}.
+		 * 
+		 * @since       1.0
+		 * */
+		MAPPED};
+	private Distances distances = Distances.MATRIX;
+	
+	/**
+	 * This FeatureClusters class determines whether the clusters found on the grid are also compared
+	 * with a K-Means clustering of the items in the data space, and how the centers of that K-Means are seeded.
+	 * 
+	 * @version     1.0
+	 * @since       1.0
+	 * */
+	public enum FeatureClusters {
+		/**
+		 * The clusters are not compared with the data space.
+		 * 
+		 * @since       1.0
+		 * */
+		NONE,
+		/**
+		 * The centers are seeded by k-means++, each center drawn with a probability proportional
+		 * to the squared distance to the nearest center already drawn.
+		 * 
+		 * @since       1.0
+		 * */
+		KMEANS_PP,
+		/**
+		 * The centers are seeded by k-means||, a few rounds drawing many candidates at once
+		 * that are then reduced to the centers, for large datasets.
+		 * 
+		 * @since       1.0
+		 * */
+		KMEANS_PARALLEL};
+	private FeatureClusters feature_clusters = FeatureClusters.NONE;
+	
 	// Ant parameters
 	private int nants = 30;
 	private int max_speed = 20;
@@ -222,10 +322,32 @@ public class Configuration {
 	private double t_create_range = 0.15;
 	private double t_remove_low = 0.1;
 	private double t_remove_range = 0.1;
+	private int pick_budget = 0;
+	private int pick_batch = 1;
 	
 	// File parameters
 	private String filename = "record_ant_clustering.txt";
 	
+	// Distance matrix parameters
+	private boolean dm_packed = true;
+	private boolean dm_float = false;
+	private int cache_size = 1 << 20;
+	private String cache_dir = System.getProperty("java.io.tmpdir") + java.io.File.separator + "antcolony";
+	
+	// Parallel parameters
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int tile_size = 64;
+	
+	// Random parameters
+	private long seed = System.nanoTime();
+	private SplittableRandom random;
+	private ForkJoinPool pool;
+	
+	// Cluster evaluation parameters
+	private int kmeans_batch = 0;
+	private double kmeans_tolerance = 0.05;
+	private long pearson_pairs = 0;
+	
 
 /********** Constructor ***************************************************************************/
 	
@@ -528,7 +650,159 @@ public class Configuration {
 	}
 	
 	/**
-	 * Set one parameter at a time according to the  designation
+	 * Set the storage of the distance matrix, packed upper triangular or dense
+	 * @param value true for the packed storage
+	 * */
+	public void setDMPacked(boolean value){
+		this.dm_packed = value;
+	}
+	
+	/**
+	 * Set the precision of the distance matrix, single or double
+	 * @param value true for single precision
+	 * */
+	public void setDMFloat(boolean value){
+		this.dm_float = value;
+	}
+	
+	/**
+	 * Set the number of worker threads used by the parallel computations
+	 * @param value the number of threads
+	 * */
+	public void setThreads(int value){
+		value = Math.max(1, value);
+		if (value != this.threads && this.pool != null) {
+			this.pool.shutdown();
+			this.pool = null;
+		}
+		this.threads = value;
+	}
+	
+	/**
+	 * Set how the distances between items are provided to the simulation
+	 * @param value the distances provider
+	 * */
+	public void setDistances(Distances value){
+		this.distances = value;
+	}
+	
+	/**
+	 * Set whether the clusters of the grid are compared with a K-Means clustering of the data space
+	 * @param value the seeding of the K-Means, NONE for no comparison
+	 * */
+	public void setFeatureClusters(FeatureClusters value){
+		this.feature_clusters = value;
+	}
+	
+	/**
+	 * Set the number of distances kept in the cache of the lazy distance provider
+	 * @param value the number of distances
+	 * */
+	public void setCacheSize(int value){
+		this.cache_size = Math.max(1, value);
+	}
+	
+	/**
+	 * Set the directory where the mapped distance matrices are stored
+	 * @param value the directory
+	 * */
+	public void setCacheDir(String value){
+		this.cache_dir = value;
+	}
+	
+	/**
+	 * Set how the ants of the colony are stepped in each tick
+	 * @param value the schedule
+	 * */
+	public void setSchedule(Schedules value){
+		this.schedule = value;
+	}
+	
+	/**
+	 * Set the minimum side of the tiles of the tiled schedule
+	 * @param value the side of the tiles
+	 * */
+	public void setTileSize(int value){
+		this.tile_size = Math.max(1, value);
+	}
+	
+	/**
+	 * Set the master seed of the random generators of the simulation. A simulation built after the seed is set
+	 * repeats the same run with the SERIAL and the TILED schedules, the TILED schedule with any number of threads.
+	 * With the PARALLEL schedule the ants draw the same numbers but the order in which they update the grid
+	 * depends on the timing of the threads, so the run is not repeated.
+	 * @param value the seed
+	 * */
+	public synchronized void setSeed(long value){
+		this.seed = value;
+		this.random = null;
+	}
+	
+	/**
+	 * Restart the master random generator from the seed, so the next simulation
+	 * built with this configuration repeats the same random sequences
+	 * */
+	public synchronized void resetRandom(){
+		this.random = new SplittableRandom(this.seed);
+	}
+	
+	/**
+	 * Split a new random generator from the master generator, to be used by one ant or one part
+	 * of the simulation without sharing it with other threads
+	 * @return a new random generator
+	 * */
+	public synchronized SplittableRandom split(){
+		if (this.random == null) resetRandom();
+		return this.random.split();
+	}
+	
+	/**
+	 * Set the number of pick attempts of an ant in one tick of the Lumer and Faieta models,
+	 * the search goes on in the next tick when the budget is spent
+	 * @param value the number of attempts, 0 for no limit
+	 * */
+	public void setPickBudget(int value){
+		this.pick_budget = Math.max(0, value);
+	}
+	
+	/**
+	 * Set the number of cells scored together by an ant looking for an item to pick,
+	 * 1 scores one cell at a time
+	 * @param value the number of cells
+	 * */
+	public void setPickBatch(int value){
+		this.pick_batch = Math.max(1, value);
+	}
+	
+	/**
+	 * Set the number of moved items sampled to update the clusters of the Lumer and Faieta models
+	 * from the centers of the last evaluation, instead of running K-Means again
+	 * @param value the number of items, 0 to always run K-Means
+	 * */
+	public void setKMeansBatch(int value){
+		this.kmeans_batch = Math.max(0, value);
+	}
+	
+	/**
+	 * Set the tolerance of the updated clusters, K-Means runs again when the mean squared distance
+	 * of the items to their centers grows more than this fraction over the last run
+	 * @param value the relative tolerance
+	 * */
+	public void setKMeansTolerance(double value){
+		this.kmeans_tolerance = Math.max(0, value);
+	}
+	
+	/**
+	 * Set the number of pairs of items sampled to estimate the Pearson correlation
+	 * @param value the number of pairs, 0 to compute it over all the pairs
+	 * */
+	public void setPearsonPairs(long value){
+		this.pearson_pairs = Math.max(0, value);
+	}
+	
+	/**
+	 * Set one parameter at a time according to the  designation.
+	 * A setting with a choice of values, as the distances, is given by the position of the value in its enumeration.
 	 * @param k the parameter designation
 	 * @param v the value
 	 * */
@@ -563,6 +837,22 @@ public class Configuration {
 		if (k == "Cicle 1") this.setCicle1((int)v);
 		if (k == "Cicle 2") this.setCicle2((int)v);
 		if (k == "Minimum F")this.setMinF(v);
+		if (k == "Feature clusters") this.setFeatureClusters(choose(FeatureClusters.values(), v));
+		if (k == "Distances") this.setDistances(choose(Distances.values(), v));
+		if (k == "Cache size") this.setCacheSize((int)v);
+		if (k == "Schedule") this.setSchedule(choose(Schedules.values(), v));
+		if (k == "Pick budget") this.setPickBudget((int)v);
+		if (k == "Pick batch") this.setPickBatch((int)v);
+	}
+	
+	/**
+	 * Choose a value of an enumeration by its position, the number of a parameter
+	 * @param values the values of the enumeration
+	 * @param v the position, bounded to the values
+	 * @return the value
+	 * */
+	private static <E> E choose(E[] values, double v){
+		return values[Math.max(0, Math.min(values.length - 1, (int)v))];
 	}
 	
 /********** simple access functions ********************************************************************/	
@@ -864,6 +1154,136 @@ public class Configuration {
 	}
 
 	
+	/**
+	 * Get the storage of the distance matrix
+	 * @return true if the matrix is stored as a packed upper triangle
+	 * */
+	public boolean getDMPacked(){
+		return this.dm_packed;
+	}
+	
+	/**
+	 * Get the precision of the distance matrix
+	 * @return true if the matrix is stored in single precision
+	 * */
+	public boolean getDMFloat(){
+		return this.dm_float;
+	}
+
+	/**
+	 * Get the number of worker threads used by the parallel computations
+	 * @return the number of threads
+	 * */
+	public int getThreads(){
+		return this.threads;
+	}
+	
+	/**
+	 * Get the pool of worker threads used by the parallel computations,
+	 * the pool is built on the first call
+	 * @return the pool
+	 * */
+	public synchronized ForkJoinPool getPool(){
+		if (this.pool == null) this.pool = new ForkJoinPool(this.threads);
+		return this.pool;
+	}
+
+	/**
+	 * Get how the distances between items are provided to the simulation
+	 * @return the distances provider
+	 * */
+	public Distances getDistances(){
+		return this.distances;
+	}
+	
+	/**
+	 * Get whether the clusters of the grid are compared with a K-Means clustering of the data space
+	 * @return the seeding of the K-Means, NONE for no comparison
+	 * */
+	public FeatureClusters getFeatureClusters(){
+		return this.feature_clusters;
+	}
+	
+	/**
+	 * Get the number of distances kept in the cache of the lazy distance provider
+	 * @return the number of distances
+	 * */
+	public int getCacheSize(){
+		return this.cache_size;
+	}
+
+	/**
+	 * Get the directory where the mapped distance matrices are stored
+	 * @return the directory
+	 * */
+	public String getCacheDir(){
+		return this.cache_dir;
+	}
+
+	/**
+	 * Get how the ants of the colony are stepped in each tick
+	 * @return the schedule
+	 * */
+	public Schedules getSchedule(){
+		return this.schedule;
+	}
+
+	/**
+	 * Get the minimum side of the tiles of the tiled schedule
+	 * @return the side of the tiles
+	 * */
+	public int getTileSize(){
+		return this.tile_size;
+	}
+
+	/**
+	 * Get the master seed of the random generators of the simulation
+	 * @return the seed
+	 * */
+	public synchronized long getSeed(){
+		return this.seed;
+	}
+
+	/**
+	 * Get the number of pick attempts of an ant in one tick of the Lumer and Faieta models
+	 * @return the number of attempts, 0 for no limit
+	 * */
+	public int getPickBudget(){
+		return this.pick_budget;
+	}
+	
+	/**
+	 * Get the number of cells scored together by an ant looking for an item to pick
+	 * @return the number of cells
+	 * */
+	public int getPickBatch(){
+		return this.pick_batch;
+	}
+
+	/**
+	 * Get the number of moved items sampled to update the clusters
+	 * @return the number of items, 0 to always run K-Means
+	 * */
+	public int getKMeansBatch(){
+		return this.kmeans_batch;
+	}
+	
+	/**
+	 * Get the tolerance of the updated clusters
+	 * @return the relative tolerance
+	 * */
+	public double getKMeansTolerance(){
+		return this.kmeans_tolerance;
+	}
+	
+	/**
+	 * Get the number of pairs of items sampled to estimate the Pearson correlation
+	 * @return the number of pairs, 0 to compute it over all the pairs
+	 * */
+	public long getPearsonPairs(){
+		return this.pearson_pairs;
+	}
+
 	/**
 	 * Get the parameters to fill the panel table according to the model
 	 * @return HashMap with the parameters
@@ -954,6 +1374,14 @@ public class Configuration {
 							r.put("Minimum F", new Double(this.getMinF()));	   					
 							break;
 		}
+		r.put("Feature clusters", new Double(this.getFeatureClusters().ordinal()));
+		r.put("Distances", new Double(this.getDistances().ordinal()));
+		r.put("Cache size", new Double(this.getCacheSize()));
+		if (this.model != Models.ANTCLASS1 && this.model != Models.ANTCLASS2) {
+			r.put("Schedule", new Double(this.getSchedule().ordinal()));
+			r.put("Pick budget", new Double(this.getPickBudget()));
+			r.put("Pick batch", new Double(this.getPickBatch()));
+		}
 		return r;
 	}
 		
@@ -0,0 +1,176 @@
+package antcolony;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/** This class counts the items of each class in each cluster of a partition, so the measures
+ * that compare the partition with the classes of the dataset are computed from the counts
+ * instead of visiting every pair of items.
+ * <p>
+ * The rows of the table are the classes, in the order of the types of the configuration, and the
+ * columns are the clusters. The first row holds the items of a type that is not in the configuration
+ * and the first column holds the items that are in no cluster, so the table covers all the items.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class Contingency {
+
+	private int n;						// number of items
+	private long[][] table;				// items of each class in each cluster
+	private long[] rows;				// items of each class
+	private long[] cols;				// items of each cluster
+	private boolean[] empty;			// clusters missing from the partition
+
+/*********** Constructor ****************************************************************************/
+
+	/** Constructor
+	 * @param items the items of the dataset
+	 * @param types the types of the items, the classes
+	 * @param clusters the partition of the items, null entries are missing clusters
+	 * */
+	public Contingency(ItemStore items, String[] types, Cluster[] clusters) {
+		this(classesOf(items, types), types.length, clustersOf(items.size(), clusters), clusters);
+	}
+
+	/** Constructor from the class and the cluster of each item
+	 * @param classes the class of each item, 0 for an unknown type
+	 * @param nclasses the number of classes
+	 * @param part the cluster of each item, 0 for no cluster
+	 * @param clusters the partition of the items, null entries are missing clusters
+	 * */
+	public Contingency(int[] classes, int nclasses, int[] part, Cluster[] clusters) {
+		this.n = classes.length;
+		this.empty = new boolean[clusters.length + 1];
+		for (int j = 0; j < clusters.length; j++) this.empty[j + 1] = clusters[j] == null;
+		this.table = new long[nclasses + 1][clusters.length + 1];
+		this.rows = new long[nclasses + 1];
+		this.cols = new long[clusters.length + 1];
+		for (int key = 0; key < n; key++) {
+			table[classes[key]][part[key]]++;
+			rows[classes[key]]++;
+			cols[part[key]]++;
+		}
+	}
+
+	/** Find the class of each item
+	 * @param items the items of the dataset
+	 * @param types the types of the items, the classes
+	 * @return the class of each item, from 1 in the order of the types, 0 for an unknown type
+	 * */
+	public static int[] classesOf(ItemStore items, String[] types) {
+		HashMap<String,Integer> map = new HashMap<String,Integer>();
+		for (int i = types.length - 1; i >= 0; i--) map.put(types[i], i + 1);
+		int[] classes = new int[items.size()];
+		for (int key = 0; key < classes.length; key++) {
+			Integer c = map.get(items.get(key).getType());
+			classes[key] = c == null ? 0 : c.intValue();
+		}
+		return classes;
+	}
+
+	/** Find the cluster of each item
+	 * @param n the number of items
+	 * @param clusters the partition of the items, null entries are missing clusters
+	 * @return the cluster of each item, from 1 in the order of the partition, 0 for no cluster
+	 * */
+	public static int[] clustersOf(int n, Cluster[] clusters) {
+		int[] part = new int[n];
+		for (int j = 0; j < clusters.length; j++) {
+			if (clusters[j] == null) continue;
+			LinkedList<Item> list = clusters[j].getItems();
+			for (Item it : list) part[it.getIndex()] = j + 1;
+		}
+		return part;
+	}
+
+/*********** Access Functions ****************************************************************************/
+
+	/** Get the number of items of a class in a cluster
+	 * @param i the class, 0 for the items of unknown type
+	 * @param j the cluster, 0 for the items in no cluster
+	 * @return the number of items
+	 * */
+	public long get(int i, int j) {
+		return this.table[i][j];
+	}
+
+	/** Get the number of items of a class
+	 * @param i the class, 0 for the items of unknown type
+	 * @return the number of items
+	 * */
+	public long getClassSize(int i) {
+		return this.rows[i];
+	}
+
+	/** Get the number of items of a cluster
+	 * @param j the cluster, 0 for the items in no cluster
+	 * @return the number of items
+	 * */
+	public long getClusterSize(int j) {
+		return this.cols[j];
+	}
+
+/*********** Measures ****************************************************************************/
+
+	/** Compute the F measure, the best F of each class over the clusters weighted by the size of the class
+	 * @return F measure
+	 * */
+	public double getFMeasure() {
+		double F_measure = 0;
+		for (int i = 1; i < rows.length; i++) {
+			double F_max = 0;
+			for (int j = 1; j < cols.length; j++) {
+				if (empty[j] || table[i][j] == 0) continue;
+				double prec = (double)table[i][j] / cols[j];
+				double recl = (double)table[i][j] / rows[i];
+				double F = 2 * prec * recl / (prec + recl);
+				if (F > F_max) F_max = F;
+			}
+			F_measure += (double)rows[i] / n * F_max;
+		}
+		return F_measure;
+	}
+
+	/** Compute the Rand index, the fraction of the pairs of items on which the classes and the partition agree
+	 * @return Rand index
+	 * */
+	public double getRand() {
+		double[] p = pairCounts();
+		if (p[0] == 0) return 1;
+		return (p[0] - p[2] - p[3] + 2 * p[1]) / p[0];
+	}
+
+	/** Compute the adjusted Rand index of Hubert and Arabie, the Rand index corrected for chance
+	 * @return adjusted Rand index, 1 for identical partitions and near 0 for a random partition
+	 * */
+	public double getAdjustedRand() {
+		double[] p = pairCounts();
+		if (p[0] == 0) return 1;
+		double expected = p[2] * p[3] / p[0];
+		double max = (p[2] + p[3]) / 2;
+		if (max == expected) return 1;
+		return (p[1] - expected) / (max - expected);
+	}
+
+	/** Count the pairs of items of the table
+	 * @return the number of pairs, the pairs in the same class and the same cluster,
+	 * the pairs in the same class and the pairs in the same cluster
+	 * */
+	private double[] pairCounts() {
+		double both = 0, same = 0, together = 0;
+		for (int i = 0; i < rows.length; i++)
+			for (int j = 0; j < cols.length; j++) both += pairs(table[i][j]);
+		for (int i = 0; i < rows.length; i++) same += pairs(rows[i]);
+		for (int j = 0; j < cols.length; j++) together += pairs(cols[j]);
+		return new double[]{pairs(n), both, same, together};
+	}
+
+	/** Number of unordered pairs of a set
+	 * */
+	private static double pairs(long m) {
+		return m * (m - 1) / 2.0;
+	}
+
+}
@@ -0,0 +1,302 @@
+package antcolony;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveAction;
+
+/** This class computes the Pearson correlation between the distances of the items in the data space
+ * and their distances on the toroidal grid, the measure of how well the grid keeps the structure of the data.
+ * <p>
+ * The positions of the items are copied to arrays before the computation. The correlation is exact, over
+ * all the pairs of items, when the <b>Pearson pairs</b> of the configuration is zero or not less than
+ * the number of pairs. The pairs are then split in blocks of rows computed on the pool of the configuration.
+ * <p>
+ * Otherwise the correlation is estimated from a stratified sample of pairs, each item drawing the same number of
+ * partners. The sampled pairs share their items, so they are not independent observations: the 95% confidence
+ * interval comes from a delete-a-group jackknife over the items, each group of items left out with all its pairs,
+ * on the scale of the Fisher transformation. The jackknife also counts the variation of the items themselves,
+ * so the interval is conservative for the correlation of all the pairs. The sums of each row and of each chunk of rows are
+ * added in order, so the result does not depend on the number of threads.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class Correlation {
+
+	private static final int GROUPS = 10;					// groups of items of the jackknife
+	private static final double[] T = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262};
+															// Student quantiles of the 95% interval, by degrees of freedom
+	private static final int CHUNK = 256;					// rows drawn with the same generator
+
+	private Configuration conf;
+	private ItemStore items;
+	private DistanceProvider distance;	// null to compute the distances of the data
+	private SplittableRandom random;
+	private int xsize, ysize;
+
+	private int m;						// number of items counted
+	private int[] index;				// index of each counted item
+	private double[] px, py;			// position of each counted item
+	private double[] sums;				// sums of x, y, x*x, y*y and x*y of each row
+	private int groups;					// groups of items of the jackknife, item a in group a % groups
+	private double[] cross;				// count and sums of the sampled pairs of each chunk by the groups of their items
+	private long pairs;					// number of pairs of the last computation
+	private double lower, upper;		// confidence interval of the last computation
+
+/*********** Constructor ****************************************************************************/
+
+	/** Constructor
+	 * @param conf the configuration of the simulation
+	 * @param grid the grid of the items
+	 * */
+	public Correlation(Configuration conf, Grid grid) {
+		this.conf = conf;
+		this.items = grid.getItems();
+		this.distance = grid.getDistanceMatrix();
+		if (this.distance instanceof LazyDistanceMatrix) this.distance = null;
+		this.random = conf.split();
+		this.xsize = conf.getxsize();
+		this.ysize = conf.getysize();
+	}
+
+/*********** Computation ****************************************************************************/
+
+	/** Compute the Pearson correlation, exact or estimated according to the configuration
+	 * @param ignore the positions of items that are currently picked up
+	 * @return Pearson correlation, 0 if it is undefined
+	 * */
+	public double compute(boolean ignore) {
+		snapshot(ignore);
+		long total = (long)m * (m - 1) / 2;
+		int s = (int)Math.min(m, (conf.getPearsonPairs() + m - 1) / Math.max(1, m));
+		if (conf.getPearsonPairs() == 0 || (long)m * s >= total) return exact();
+		return sample(s);
+	}
+
+	/** Get the number of pairs used by the last computation
+	 * @return number of pairs
+	 * */
+	public long getPairs() {
+		return this.pairs;
+	}
+
+	/** Get the lower bound of the confidence interval of the last computation
+	 * @return the bound, the correlation itself if it was exact
+	 * */
+	public double getLower() {
+		return this.lower;
+	}
+
+	/** Get the upper bound of the confidence interval of the last computation
+	 * @return the bound, the correlation itself if it was exact
+	 * */
+	public double getUpper() {
+		return this.upper;
+	}
+
+	/** Copy the positions of the items counted
+	 * */
+	private void snapshot(boolean ignore) {
+		int n = items.size();
+		if (index == null || index.length != n) {
+			index = new int[n];
+			px = new double[n];
+			py = new double[n];
+			sums = new double[5 * n];
+		}
+		m = 0;
+		for (int i = 0; i < n; i++) {
+			Item it = items.get(i);
+			if (ignore && it.isPicked()) continue;
+			index[m] = i;
+			px[m] = it.getX();
+			py[m] = it.getY();
+			m++;
+		}
+	}
+
+	/** Correlation over all the pairs of items
+	 * */
+	private double exact() {
+		int grain = conf.getThreads() > 1 ? Math.max(1, m / (conf.getThreads() * 16)) : Math.max(1, m);
+		RowBlock block = new RowBlock(null, 0, 0, m, grain);
+		if (conf.getThreads() > 1) conf.getPool().invoke(block);
+		else block.compute();
+		this.pairs = (long)m * (m - 1) / 2;
+		double r = correlation();
+		this.lower = r;
+		this.upper = r;
+		return r;
+	}
+
+	/** Correlation over a stratified sample of pairs, the same number of partners for each item
+	 * @param s the number of partners of each item
+	 * */
+	private double sample(int s) {
+		long[] seeds = new long[(m + CHUNK - 1) / CHUNK];
+		for (int c = 0; c < seeds.length; c++) seeds[c] = random.nextLong();
+		this.groups = Math.min(GROUPS, m);
+		int size = groups * groups * 6;
+		if (cross == null || cross.length < seeds.length * size) cross = new double[seeds.length * size];
+		int grain = conf.getThreads() > 1 ? Math.max(1, seeds.length / (conf.getThreads() * 16)) : Math.max(1, seeds.length);
+		RowBlock block = new RowBlock(seeds, s, 0, seeds.length, grain);
+		if (conf.getThreads() > 1) conf.getPool().invoke(block);
+		else block.compute();
+		this.pairs = (long)m * s;
+		double r = correlation();
+		jackknife(seeds.length, r);
+		return r;
+	}
+
+	/** Compute the confidence interval of a sampled correlation with a delete-a-group jackknife over the items.
+	 * The correlation is computed again without each group of items and all the pairs that hold one of them,
+	 * and the spread of these values on the Fisher scale gives the width of the interval.
+	 * @param chunks the number of chunks of rows
+	 * @param r the correlation of all the sampled pairs
+	 * */
+	private void jackknife(int chunks, double r) {
+		int size = groups * groups * 6;
+		double[] t = new double[size];
+		for (int c = 0; c < chunks; c++)
+			for (int k = 0; k < size; k++) t[k] += cross[c * size + k];
+		double[] all = new double[6];
+		for (int k = 0; k < size; k++) all[k % 6] += t[k];
+		double[] z = new double[groups];
+		double[] left = new double[6];
+		double mean = 0;
+		for (int g = 0; g < groups; g++) {
+			for (int k = 0; k < 6; k++) {
+				double out = 0;
+				for (int h = 0; h < groups; h++) out += t[(g * groups + h) * 6 + k] + t[(h * groups + g) * 6 + k];
+				left[k] = all[k] - out + t[(g * groups + g) * 6 + k];
+			}
+			double rg = pearson(left[0], left[1], left[2], left[3], left[4], left[5]);
+			z[g] = fisher(rg);
+			mean += z[g];
+		}
+		mean /= groups;
+		double var = 0;
+		for (int g = 0; g < groups; g++) var += (z[g] - mean) * (z[g] - mean);
+		var *= (double)(groups - 1) / groups;
+		if (groups < 2 || Double.isNaN(var)) {
+			this.lower = -1;
+			this.upper = 1;
+			return;
+		}
+		double e = T[Math.min(groups - 1, T.length) - 1] * Math.sqrt(var);
+		this.lower = Math.tanh(fisher(r) - e);
+		this.upper = Math.tanh(fisher(r) + e);
+	}
+
+	/** The Fisher transformation of a correlation, bounded away from the infinite values at -1 and 1
+	 * */
+	private static double fisher(double r) {
+		r = Math.max(-1 + 1e-12, Math.min(1 - 1e-12, r));
+		return 0.5 * Math.log((1 + r) / (1 - r));
+	}
+
+	/** Add the sums of the rows in order and compute the correlation
+	 * */
+	private double correlation() {
+		double xsum = 0, ysum = 0, xsquaresum = 0, ysquaresum = 0, xysum = 0;
+		for (int a = 0; a < m; a++) {
+			xsum += sums[5 * a];
+			ysum += sums[5 * a + 1];
+			xsquaresum += sums[5 * a + 2];
+			ysquaresum += sums[5 * a + 3];
+			xysum += sums[5 * a + 4];
+		}
+		return pearson(this.pairs, xsum, ysum, xsquaresum, ysquaresum, xysum);
+	}
+
+	/** Compute the correlation from the count and the sums of the pairs
+	 * @return the correlation, 0 if it is undefined
+	 * */
+	private static double pearson(double N, double xsum, double ysum, double xsquaresum, double ysquaresum, double xysum) {
+		if (N == 0) return 0;
+		double num = xysum - xsum*ysum/N;
+		double denom = Math.sqrt((xsquaresum - xsum*xsum/N)*(ysquaresum-ysum*ysum/N));
+		if (denom == 0 || Double.isNaN(denom)) return 0;
+		return num / denom;
+	}
+
+	/** Add one pair to the sums of a row
+	 * @param c the chunk of the row in the sums by groups, -1 to add only to the sums of the row
+	 * */
+	private void add(int a, int b, int c) {
+		double x = Math.abs(distance != null ? distance.get(index[a], index[b]) : items.distance(index[a], index[b]));
+		double xdiff = Math.abs(px[a] - px[b]);
+		xdiff = Math.min(xdiff, xsize - xdiff);
+		double ydiff = Math.abs(py[a] - py[b]);
+		ydiff = Math.min(ydiff, ysize - ydiff);
+		double y = Math.sqrt(xdiff*xdiff + ydiff*ydiff);
+		int p = 5 * a;
+		sums[p] += x;
+		sums[p + 1] += y;
+		sums[p + 2] += x*x;
+		sums[p + 3] += y*y;
+		sums[p + 4] += x*y;
+		if (c == -1) return;
+		int q = ((c * groups + a % groups) * groups + b % groups) * 6;
+		cross[q] += 1;
+		cross[q + 1] += x;
+		cross[q + 2] += y;
+		cross[q + 3] += x*x;
+		cross[q + 4] += y*y;
+		cross[q + 5] += x*y;
+	}
+
+	/** A block of rows, split in halves until it is small enough. Without seeds the rows
+	 * go from lo to hi and each row holds the pairs with the following items, with seeds
+	 * the chunks of rows go from lo to hi and each row draws its partners.
+	 * */
+	private class RowBlock extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private long[] seeds;
+		private int s, lo, hi, grain;
+
+		RowBlock(long[] seeds, int s, int lo, int hi, int grain) {
+			this.seeds = seeds;
+			this.s = s;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+
+		protected void compute() {
+			if (hi - lo <= grain) {
+				if (seeds == null) {
+					for (int a = lo; a < hi; a++) {
+						clear(a);
+						for (int b = a + 1; b < m; b++) add(a, b, -1);
+					}
+				}
+				else {
+					int size = groups * groups * 6;
+					for (int c = lo; c < hi; c++) {
+						for (int k = 0; k < size; k++) cross[c * size + k] = 0;
+						SplittableRandom r = new SplittableRandom(seeds[c]);
+						for (int a = c * CHUNK; a < Math.min(m, (c + 1) * CHUNK); a++) {
+							clear(a);
+							for (int k = 0; k < s; k++) {
+								int b = r.nextInt(m - 1);
+								if (b >= a) b++;
+								add(a, b, c);
+							}
+						}
+					}
+				}
+			}
+			else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new RowBlock(seeds, s, lo, mid, grain), new RowBlock(seeds, s, mid, hi, grain));
+			}
+		}
+
+		private void clear(int a) {
+			for (int k = 0; k < 5; k++) sums[5 * a + k] = 0;
+		}
+	}
+
+}
@@ -6,7 +6,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
@@ -31,14 +30,15 @@ import antcolony.Configuration.Datasets;
  * The fist two datasets <b>UNIFORM9</b> and <b>NORMAL4</b> are built by this class, all the others are loaded from the files.
  * 
  * @author      Antnio Fonseca
- * @version     1.2
+ * @version     1.3
  * @since       1.0
  * */
 public class Data {
 	
 	private Configuration conf;
-	private HashMap<UUID,Item> items;          // document collection
+	private ItemStore items;          // document collection
 	private List<List<String>> csvData;
+	private Random random;				// generator of the data, split from the configuration
 	
 
 	
@@ -48,6 +48,7 @@ public class Data {
     * */
 	public Data(Configuration c) {
 		this.conf = c;
+		this.random = new Random(c.split().nextLong());
 		generate_items();
 	}
 
@@ -60,15 +61,23 @@ public class Data {
 	}
 	
 	/** Retrieve all items
-	 * @return HashMap with items IDs and the items
+	 * @return the store with the items indexed by int
 	 * */
-	public HashMap<UUID,Item> getItems() {
+	public ItemStore getItems() {
 		return this.items;
 	}
 
 
 /*********** hardcoded generation of artificial data *************************************/
 
+/** Generate the id of a new item from the generator of the data,
+ * so the same seed gives the same ids
+ * @return the id
+*/
+private UUID newID() {
+	return new UUID(this.random.nextLong(), this.random.nextLong());
+}
+
 /** Generate the hardcoded data for the test distributions
 */
 
@@ -76,15 +85,15 @@ private void generate_items() {
 
 		int n = this.conf.getnitems();
 		Datasets d = this.conf.getDataset();
-		Random generator = new Random();
+		Random generator = this.random;
 		int [][] centers = new int[9][2];
 	
 		switch (d) {
 	
 		// Hard-coded test distribution (Uniform Distribution)
 	
-		case UNIFORM9 :	items = new HashMap<UUID,Item>();
-						this.conf.setnkeys(2);
+		case UNIFORM9 :	this.conf.setnkeys(2);
+						items = new ItemStore(n, conf.getnkeys());
 						centers[0][0] = this.conf.getxsize()/6; centers[0][1] = this.conf.getysize()/6;
 						centers[1][0] = this.conf.getxsize()/2; centers[1][1] = this.conf.getysize()/6;
 						centers[2][0] = this.conf.getxsize()/6 * 5; centers[2][1] = this.conf.getysize()/6;
@@ -99,8 +108,8 @@ private void generate_items() {
 							String t = Integer.toString(type);
 							int x = centers[type][0]+(int)((generator.nextDouble()- 0.5)* this.conf.getxsize()/6);
 							int y = centers[type][1]+(int)((generator.nextDouble()- 0.5)* this.conf.getysize()/6);
-							UUID key = UUID.randomUUID();
-							items.put(key,new Item(key,this.conf,x,y,t,type,generate_map(x,y)));
+							UUID key = newID();
+							items.add(new Item(key,this.conf,x,y,t,type,generate_map(x,y)));
 							}
 						conf.setTypes(new String[]{"0","1","2","3","4","5","6","7","8"});
 						conf.setntypes(9);
@@ -108,8 +117,8 @@ private void generate_items() {
 									
 		// Hard-coded test distribution (Normal Distribution)
 									
-		case NORMAL4 :	items = new HashMap<UUID,Item>();
-						conf.setnkeys(2);
+		case NORMAL4 :	conf.setnkeys(2);
+						items = new ItemStore(n, conf.getnkeys());
 						centers[0][0] = this.conf.getxsize()/4; centers[0][1] = this.conf.getysize()/4;
 						centers[1][0] = this.conf.getxsize()/4 * 3; centers[1][1] = this.conf.getysize()/4;
 						centers[2][0] = this.conf.getxsize()/4; centers[2][1] = this.conf.getysize()/4 * 3;
@@ -119,8 +128,8 @@ private void generate_items() {
 						String t = Integer.toString(type);
 						int x = centers[type][0]+(int)(generator.nextGaussian()* this.conf.getxsize()/12);
 						int y = centers[type][1]+(int)(generator.nextGaussian()* this.conf.getysize()/12);
-						UUID key = UUID.randomUUID();
-						items.put(key,new Item(key,this.conf,x,y,t,type,generate_map(x,y)));
+						UUID key = newID();
+						items.add(new Item(key,this.conf,x,y,t,type,generate_map(x,y)));
 						}
 						conf.setTypes(new String[]{"0","1","2","3"});
 						conf.setntypes(4);
@@ -134,7 +143,7 @@ private void generate_items() {
 						conf.setnitems(n);
 						conf.setntypes(3);
 						conf.setnkeys(4);
-						items = new HashMap<UUID,Item>();
+						items = new ItemStore(n, conf.getnkeys());
 						int cl = 0;
 						HashMap<String,Integer> mapx = new HashMap<String,Integer>();
 						HashMap<String,Integer> mapy = new HashMap<String,Integer>();
@@ -151,15 +160,14 @@ private void generate_items() {
 							if (type.equals("Iris-versicolor")) cl=2;
 							if (type.equals("Iris-virginica")) cl=3;
 							list=list.subList(0, list.size()-1);
-							List<Double> l_out = new ArrayList<Double>();
-							Iterator<String> it = list.iterator();
-							while (it.hasNext()) l_out.add(Double.parseDouble(it.next()));
+							double[] l_out = new double[list.size()];
+							for (int k=0; k<l_out.length; k++) l_out[k] = Double.parseDouble(list.get(k));
 							double x = (Double.parseDouble(list.get(0))+Double.parseDouble(list.get(1))-1);
 							double y = (Double.parseDouble(list.get(2))+Double.parseDouble(list.get(3))-1);
 							x = x * this.conf.getxsize()/4 + mapx.get(type);
 							y = y * this.conf.getxsize()/4 + mapy.get(type);
-							UUID key = UUID.randomUUID();
-							items.put(key,new Item(key,this.conf,(int)x,(int)y,type,cl,l_out));
+							UUID key = newID();
+							items.add(new Item(key,this.conf,(int)x,(int)y,type,cl,l_out));
 						}
 						}
 						catch (Exception e) {
@@ -176,7 +184,7 @@ private void generate_items() {
 						conf.setntypes(3);
 						conf.setnitems(n);
 						conf.setnkeys(13);
-						items = new HashMap<UUID,Item>();
+						items = new ItemStore(n, conf.getnkeys());
 						HashMap<String,Integer> mapx = new HashMap<String,Integer>();
 						HashMap<String,Integer> mapy = new HashMap<String,Integer>();
 						mapx.put("1", this.conf.getxsize()/5);
@@ -189,9 +197,8 @@ private void generate_items() {
 							List<String> list = this.csvData.get(i);
 							String type = list.get(list.size()-1);
 							list=list.subList(0, list.size()-1);
-							List<Double> l_out = new ArrayList<Double>();
-							Iterator<String> it = list.iterator();
-							while (it.hasNext()) l_out.add(Double.parseDouble(it.next()));
+							double[] l_out = new double[list.size()];
+							for (int k=0; k<l_out.length; k++) l_out[k] = Double.parseDouble(list.get(k));
 							double x = 0;
 							double y = 0;
 							int j=0;
@@ -203,8 +210,8 @@ private void generate_items() {
 								}
 							x = (x-2) * this.conf.getxsize()/6 + mapx.get(type);
 							y = (y-2) * this.conf.getxsize()/6 + mapy.get(type);
-							UUID key = UUID.randomUUID();
-							items.put(key,new Item(key,this.conf,(int)x,(int)y,type,Integer.parseInt(type),l_out));
+							UUID key = newID();
+							items.add(new Item(key,this.conf,(int)x,(int)y,type,Integer.parseInt(type),l_out));
 						}
 						}
 						catch (Exception e) {
@@ -221,7 +228,7 @@ private void generate_items() {
 						conf.setntypes(6);
 						conf.setnitems(n);
 						conf.setnkeys(9);
-						items = new HashMap<UUID,Item>();
+						items = new ItemStore(n, conf.getnkeys());
 						HashMap<String,Integer> mapx = new HashMap<String,Integer>();
 						HashMap<String,Integer> mapy = new HashMap<String,Integer>();
 						mapx.put("1", this.conf.getxsize()/6);
@@ -240,9 +247,8 @@ private void generate_items() {
 							List<String> list = this.csvData.get(i);
 							String type = list.get(list.size()-1);
 							list=list.subList(0, list.size()-1);
-							List<Double> l_out = new ArrayList<Double>();
-							Iterator<String> it = list.iterator();
-							while (it.hasNext()) l_out.add(Double.parseDouble(it.next()));
+							double[] l_out = new double[list.size()];
+							for (int k=0; k<l_out.length; k++) l_out[k] = Double.parseDouble(list.get(k));
 							double x = 0;
 							double y = 0;
 							int j=0;
@@ -254,8 +260,8 @@ private void generate_items() {
 							}
 							x = (x-1) * this.conf.getxsize()/4 + mapx.get(type);
 							y = (y-1) * this.conf.getysize()/4 + mapy.get(type);
-							UUID key = UUID.randomUUID();
-							items.put(key,new Item(key,this.conf,(int)x,(int)y,type,Integer.parseInt(type),l_out));
+							UUID key = newID();
+							items.add(new Item(key,this.conf,(int)x,(int)y,type,Integer.parseInt(type),l_out));
 						}
 						}
 						catch (Exception e) {
@@ -272,7 +278,7 @@ private void generate_items() {
 						conf.setntypes(2);
 						conf.setnitems(n);
 						conf.setnkeys(9);
-						items = new HashMap<UUID,Item>();
+						items = new ItemStore(n, conf.getnkeys());
 						HashMap<String,Integer> mapx = new HashMap<String,Integer>();
 						HashMap<String,Integer> mapy = new HashMap<String,Integer>();
 						mapx.put("2", this.conf.getxsize()/4);
@@ -283,9 +289,8 @@ private void generate_items() {
 							List<String> list = this.csvData.get(i);
 							String type = list.get(list.size()-1);
 							list=list.subList(0, list.size()-1);
-							List<Double> l_out = new ArrayList<Double>();
-							Iterator<String> it = list.iterator();
-							while (it.hasNext()) l_out.add(Double.parseDouble(it.next()));
+							double[] l_out = new double[list.size()];
+							for (int k=0; k<l_out.length; k++) l_out[k] = Double.parseDouble(list.get(k));
 							double x = 0;
 							double y = 0;
 							int j=0;
@@ -299,8 +304,8 @@ private void generate_items() {
 							y = (y-3)/2;
 							x = x * this.conf.getxsize()/8 + mapx.get(type);
 							y = y * this.conf.getysize()/8 + mapy.get(type);
-							UUID key = UUID.randomUUID();
-							items.put(key,new Item(key,this.conf,(int)x,(int)y,type,Integer.parseInt(type),l_out));
+							UUID key = newID();
+							items.add(new Item(key,this.conf,(int)x,(int)y,type,Integer.parseInt(type),l_out));
 						}
 						}		
 						catch (Exception e) {
@@ -314,13 +319,10 @@ private void generate_items() {
 
 /** Generate a map of the synthetic item to include in the data
 */
-private List<Double> generate_map(int x, int y){
-	List<Double> m = new ArrayList<Double>();
+private double[] generate_map(int x, int y){
 	double a = (double)x/(double)conf.getxsize();
 	double b = (double)y/(double)conf.getysize();
-	m.add(a);
-	m.add(b);
-	return m;
+	return new double[]{a,b};
 }
 
 /** Read a csv file with the data for the UCI datasets
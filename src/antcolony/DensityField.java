@@ -0,0 +1,109 @@
+package antcolony;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/** This class keeps the number of occupied cells of a toroidal grid, so the number
+ * of items in a square window around a cell is found without visiting its cells.
+ * <p>
+ * The counts are kept in a two dimensional Fenwick tree, updated when a cell is
+ * occupied or freed. A window that crosses the border of the grid is split in at most
+ * four rectangles, so a query costs O(log xsize * log ysize).
+ * The counts are updated atomically, so ants stepped in parallel can occupy and free cells
+ * at the same time.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class DensityField {
+
+	private int xsize, ysize;			// size of the grid
+	private AtomicIntegerArray tree;	// Fenwick tree by rows, 1-based
+
+/*********** Constructor ****************************************************************************/
+
+	/** Constructor of an empty field
+	 * @param xsize the width of the grid
+	 * @param ysize the height of the grid
+	 * */
+	public DensityField(int xsize, int ysize) {
+		this.xsize = xsize;
+		this.ysize = ysize;
+		this.tree = new AtomicIntegerArray((xsize + 1) * (ysize + 1));
+	}
+
+/*********** Access & Modification Functions ****************************************************************************/
+
+	/** Free all the cells
+	 * */
+	public void clear() {
+		for (int i = 0; i < this.tree.length(); i++) this.tree.set(i, 0);
+	}
+
+	/** Change the count of a cell
+	 * @param x the x-coordinate of the cell
+	 * @param y the y-coordinate of the cell
+	 * @param d the change, 1 when the cell is occupied and -1 when it is freed
+	 * */
+	public void add(int x, int y, int d) {
+		for (int i = x + 1; i <= xsize; i += i & -i)
+			for (int j = y + 1; j <= ysize; j += j & -j)
+				tree.addAndGet(i * (ysize + 1) + j, d);
+	}
+
+	/** Check if a window fits in the grid without covering a cell twice
+	 * @param r the radius of the window
+	 * @return true if the window can be counted
+	 * */
+	public boolean fits(int r) {
+		return 2 * r + 1 <= xsize && 2 * r + 1 <= ysize;
+	}
+
+	/** Count the occupied cells in the square window of a given radius around a cell,
+	 * wrapping around the borders of the grid. The window must fit in the grid.
+	 * @param x the x-coordinate of the center of the window
+	 * @param y the y-coordinate of the center of the window
+	 * @param r the radius of the window
+	 * @return number of occupied cells in the window
+	 * */
+	public int count(int x, int y, int r) {
+		int w = 2 * r + 1;
+		int x0 = ((x - r) % xsize + xsize) % xsize;
+		int y0 = ((y - r) % ysize + ysize) % ysize;
+		int x1 = x0 + w, y1 = y0 + w;
+		int sum = 0;
+		if (x1 <= xsize) {
+			if (y1 <= ysize) sum = rect(x0, y0, x1, y1);
+			else sum = rect(x0, y0, x1, ysize) + rect(x0, 0, x1, y1 - ysize);
+		}
+		else {
+			if (y1 <= ysize) sum = rect(x0, y0, xsize, y1) + rect(0, y0, x1 - xsize, y1);
+			else sum = rect(x0, y0, xsize, ysize) + rect(0, y0, x1 - xsize, ysize)
+					+ rect(x0, 0, xsize, y1 - ysize) + rect(0, 0, x1 - xsize, y1 - ysize);
+		}
+		return sum;
+	}
+
+	/** Count the occupied cells in a rectangle inside the grid
+	 * @param x0 the first x-coordinate of the rectangle
+	 * @param y0 the first y-coordinate of the rectangle
+	 * @param x1 the x-coordinate after the rectangle
+	 * @param y1 the y-coordinate after the rectangle
+	 * @return number of occupied cells with x0 &lt;= x &lt; x1 and y0 &lt;= y &lt; y1
+	 * */
+	public int rect(int x0, int y0, int x1, int y1) {
+		return prefix(x1, y1) - prefix(x0, y1) - prefix(x1, y0) + prefix(x0, y0);
+	}
+
+	/** Count the occupied cells before a corner
+	 * @return number of occupied cells with coordinates less than x and y
+	 * */
+	private int prefix(int x, int y) {
+		int sum = 0;
+		for (int i = x; i > 0; i -= i & -i)
+			for (int j = y; j > 0; j -= j & -j)
+				sum += tree.get(i * (ysize + 1) + j);
+		return sum;
+	}
+
+}
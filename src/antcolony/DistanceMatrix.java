@@ -1,23 +1,35 @@
 package antcolony;
 
-import java.util.HashMap;
-import java.util.UUID;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This class is an auxiliary class to store all the original distances between items
  * before the running of the clustering.
  * The values are scale by a factor equal to the area of the matrix minus one
- * 
+ * <p>
+ * The items are addressed by their index in the {@link ItemStore} of the dataset.
+ * Each pair of items is computed once, and according to the configuration the matrix is stored:
+ * <ul>
+ * <li> Dense, as a full n x n matrix.
+ * <li> Packed, as the upper triangle without the diagonal, row i holding the items j &gt; i.
+ * </ul>
+ * In both cases the values can be stored in double or in single precision.
+ * <p>
+ * The rows of the matrix are computed in blocks on the pool of the configuration.
+ * The sum of each row is kept apart and the rows are added in order at the end,
+ * so the scale factor does not depend on the number of threads.
+ *
  * @author      Antnio Fonseca
- * @version     1.0
+ * @version     1.3
  * @since       1.0
  * */
-public class DistanceMatrix {
+public class DistanceMatrix implements DistanceProvider {
 
 	private double scaleFactor;
-	private HashMap<UUID,Item> items;
-	private HashMap<UUID,Integer> dictionary;
+	private boolean packed;				// upper triangular storage
+	private boolean single;				// single precision storage
 	private double [][] matrix;
+	private float [][] fmatrix;
 
 	/**
 	 * This is the constructor, once built the class stores all the values.
@@ -25,25 +37,43 @@ public class DistanceMatrix {
 	 * @param conf the configuration of the simulation
 	 * */
 	public DistanceMatrix(Data data, Configuration conf) {
-		items = data.getItems();
-		dictionary = new HashMap<UUID,Integer>();
-		int i=0;
-		for (UUID key: items.keySet()) {
-			dictionary.put(key, i);
-			i++;
+		ItemStore items = data.getItems();
+		int n = items.size();
+		this.packed = conf.getDMPacked();
+		this.single = conf.getDMFloat();
+		if (single) fmatrix = new float[n][];
+		else matrix = new double[n][];
+		for (int i = 0; i < n; i++) {
+			int len = packed ? n - i - 1 : n;
+			if (single) fmatrix[i] = new float[len];
+			else matrix[i] = new double[len];
 		}
-		matrix = new double[items.size()][items.size()];
-
-		for (UUID key: items.keySet())  matrix[dictionary.get(key)] = new double[items.size()];
-		scaleFactor = 0;
-		for (UUID key: items.keySet())  {
-			for (UUID key1: items.keySet()) {
-				double d = (double)items.get(key).distance(items.get(key1),2);
-				matrix[dictionary.get(key)][dictionary.get(key1)] = d;
-				scaleFactor += d;
-			}
+		double[] sums = new double[n];
+		if (conf.getThreads() > 1) {
+			int grain = Math.max(1, n / (conf.getThreads() * 16));
+			conf.getPool().invoke(new RowBlock(items, sums, 0, n, grain));
+		}
+		else for (int i = 0; i < n; i++) computeRow(items, sums, i);
+		double sum = 0;
+		for (int i = 0; i < n; i++) sum += sums[i];
+		scaleFactor = 2 * sum / ((double)n * (double)(n - 1));
+	}
+	
+	/**
+	 * Compute the distances between one item and all the items after it
+	 * @param items the items
+	 * @param sums the array where the sum of the row is stored
+	 * @param i the index of the item
+	 * */
+	private void computeRow(ItemStore items, double[] sums, int i) {
+		int n = items.size();
+		double sum = 0;
+		for (int j = i + 1; j < n; j++) {
+			double d = items.distance(i, j);
+			set(i, j, d);
+			sum += d;
 		}
-		scaleFactor /= (double)(items.size()*(items.size() - 1));
+		sums[i] = sum;
 	}
 
 	/**
@@ -53,16 +83,77 @@ public class DistanceMatrix {
 	public double getScaleFactor(){
 		return scaleFactor;
 	}
-	
+
 	/**
 	 * Return one value of the Matrix
 	 * @return value between two items
-	 * @param i the UUID of one of the items
-	 * @param j the UUID of the other item
+	 * @param i the index of one of the items
+	 * @param j the index of the other item
 	 * */
-	public double get(UUID i, UUID j) {
+	public double get(int i, int j) {
 		if (i==j) return 0;
-		else return matrix[dictionary.get(i)][dictionary.get(j)];
+		if (packed) {
+			if (i > j) {
+				int t = i;
+				i = j;
+				j = t;
+			}
+			j = j - i - 1;
+		}
+		if (single) return fmatrix[i][j];
+		else return matrix[i][j];
+	}
+
+	/**
+	 * A block of rows of the matrix, split in halves until it is small enough
+	 * */
+	private class RowBlock extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private ItemStore items;
+		private double[] sums;
+		private int lo, hi, grain;
+
+		RowBlock(ItemStore items, double[] sums, int lo, int hi, int grain) {
+			this.items = items;
+			this.sums = sums;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+
+		protected void compute() {
+			if (hi - lo <= grain) {
+				for (int i = lo; i < hi; i++) computeRow(items, sums, i);
+			}
+			else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new RowBlock(items, sums, lo, mid, grain), new RowBlock(items, sums, mid, hi, grain));
+			}
+		}
+	}
+
+	/**
+	 * Store the value of a pair of items, i &lt; j
+	 * @param i the index of one of the items
+	 * @param j the index of the other item
+	 * @param d the value
+	 * */
+	private void set(int i, int j, double d) {
+		if (packed) {
+			if (single) fmatrix[i][j - i - 1] = (float)d;
+			else matrix[i][j - i - 1] = d;
+		}
+		else {
+			if (single) {
+				fmatrix[i][j] = (float)d;
+				fmatrix[j][i] = (float)d;
+			}
+			else {
+				matrix[i][j] = d;
+				matrix[j][i] = d;
+			}
+		}
 	}
 
 }
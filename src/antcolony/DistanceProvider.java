@@ -0,0 +1,30 @@
+package antcolony;
+
+/**
+ * The DistanceProvider interface gives the original distances between the items of the dataset
+ * to the grid and to the measures of the simulation.
+ * <p>
+ * The items are addressed by their index in the {@link ItemStore} of the dataset.
+ * The implementation used by a simulation is selected by {@link Configuration#getDistances()}.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public interface DistanceProvider {
+
+	/**
+	 * Get the scale factor used in the calculations, the mean distance between two different items
+	 * @return scale factor
+	 * */
+	double getScaleFactor();
+
+	/**
+	 * Return the distance between two items
+	 * @param i the index of one of the items
+	 * @param j the index of the other item
+	 * @return value between two items
+	 * */
+	double get(int i, int j);
+
+}
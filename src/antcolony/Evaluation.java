@@ -0,0 +1,322 @@
+package antcolony;
+
+import java.util.ArrayList;
+
+/** This class evaluates the quality of the grid of a simulation with a list of measures, the stages,
+ * run in order at each evaluation.
+ * <p>
+ * The data shared by the measures is built once for each partition of the grid, when a stage first asks
+ * for it: the class and the cluster of each item, the {@link Contingency} table of the classes against
+ * the clusters, and the centroids of the clusters in the data space. The class of each item is found once for the dataset.
+ * <p>
+ * The default stages are the Pearson correlation, the entropy, the F measure, the Rand index and
+ * the inner cluster variance. With the feature clusters of the configuration, the adjusted Rand index
+ * of the clusters against a K-Means clustering of the data space follows them. Other measures are added as new stages.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class Evaluation {
+
+	/** A measure of the evaluation
+	 * */
+	public interface Stage {
+
+		/** Get the name of the measure
+		 * @return the name
+		 * */
+		String getName();
+
+		/** Compute the measure
+		 * @param e the evaluation, giving the data shared by the stages
+		 * @return the value of the measure
+		 * */
+		double compute(Evaluation e);
+	}
+
+	/** Pearson correlation of the distances in the data and on the grid */
+	public static final Stage PEARSON = new Stage() {
+		public String getName() { return "Pearson"; }
+		public double compute(Evaluation e) { return e.getCorrelation().compute(true); }
+	};
+
+	/** Entropy of the items over the regions of the grid */
+	public static final Stage ENTROPY = new Stage() {
+		public String getName() { return "Entropy"; }
+		public double compute(Evaluation e) { return e.computeEntropy(true); }
+	};
+
+	/** F measure of the clusters against the classes */
+	public static final Stage F_MEASURE = new Stage() {
+		public String getName() { return "F Measure"; }
+		public double compute(Evaluation e) { return e.getContingency().getFMeasure(); }
+	};
+
+	/** Rand index of the clusters against the classes */
+	public static final Stage RAND = new Stage() {
+		public String getName() { return "Rand Index"; }
+		public double compute(Evaluation e) { return e.getContingency().getRand(); }
+	};
+
+	/** Adjusted Rand index of the clusters against the classes */
+	public static final Stage ADJUSTED_RAND = new Stage() {
+		public String getName() { return "Adjusted Rand"; }
+		public double compute(Evaluation e) { return e.getContingency().getAdjustedRand(); }
+	};
+
+	/** Mean distance of the items to the centroid of their cluster in the data space */
+	public static final Stage INNER_VARIANCE = new Stage() {
+		public String getName() { return "Inner Variance"; }
+		public double compute(Evaluation e) { return e.computeInnerClusterVariance(); }
+	};
+
+	/** Adjusted Rand index of the clusters against a K-Means clustering of the data space */
+	public static final Stage FEATURE_RAND = new Stage() {
+		public String getName() { return "Feature Rand"; }
+		public double compute(Evaluation e) { return e.computeFeatureRand(); }
+	};
+
+	private Configuration conf;
+	private Grid grid;
+	private ItemStore items;
+	private Correlation correlation;
+	private ArrayList<Stage> stages;
+
+	private int[] classes;				// class of each item, 0 for an unknown type
+	private Cluster[] partition;		// partition of the shared data
+	private int[] part;					// cluster of each item, 0 for no cluster
+	private Contingency contingency;
+	private double[] centroids;			// centroids of the clusters in the data space, by rows
+	private long seed;					// seed of the K-Means in the data space
+	private int[] features;				// cluster of each item by K-Means in the data space, null until needed
+	private int nfeatures;				// number of clusters of K-Means in the data space
+
+/*********** Constructor ****************************************************************************/
+
+	/** Constructor with the default stages
+	 * @param conf the configuration of the simulation
+	 * @param grid the grid to evaluate
+	 * */
+	public Evaluation(Configuration conf, Grid grid) {
+		this.conf = conf;
+		this.grid = grid;
+		this.items = grid.getItems();
+		this.correlation = new Correlation(conf, grid);
+		this.classes = Contingency.classesOf(this.items, conf.getTypes());
+		this.stages = new ArrayList<Stage>();
+		add(PEARSON);
+		add(ENTROPY);
+		add(F_MEASURE);
+		add(RAND);
+		add(INNER_VARIANCE);
+		if (conf.getFeatureClusters() != Configuration.FeatureClusters.NONE) {
+			this.seed = conf.split().nextLong();
+			add(FEATURE_RAND);
+		}
+	}
+
+/*********** Access & Modification Functions ****************************************************************************/
+
+	/** Add a stage after the existing stages
+	 * @param s the stage
+	 * */
+	public void add(Stage s) {
+		this.stages.add(s);
+	}
+
+	/** Get the number of stages
+	 * @return number of stages
+	 * */
+	public int getnStages() {
+		return this.stages.size();
+	}
+
+	/** Get a stage
+	 * @param i the position of the stage
+	 * @return the stage
+	 * */
+	public Stage getStage(int i) {
+		return this.stages.get(i);
+	}
+
+	/** Get the grid under evaluation
+	 * @return the grid
+	 * */
+	public Grid getGrid() {
+		return this.grid;
+	}
+
+	/** Get the configuration of the simulation
+	 * @return the configuration
+	 * */
+	public Configuration getConfiguration() {
+		return this.conf;
+	}
+
+	/** Get the engine of the Pearson correlation
+	 * @return the engine
+	 * */
+	public Correlation getCorrelation() {
+		return this.correlation;
+	}
+
+	/** Get the class of each item
+	 * @return the classes, from 1 in the order of the types, 0 for an unknown type
+	 * */
+	public int[] getClasses() {
+		return this.classes;
+	}
+
+	/** Get the cluster of each item in the current partition of the grid
+	 * @return the clusters, from 1 in the order of the partition, 0 for no cluster
+	 * */
+	public int[] getParts() {
+		refresh();
+		return this.part;
+	}
+
+	/** Get the table of the classes against the clusters of the current partition of the grid
+	 * @return the contingency table
+	 * */
+	public Contingency getContingency() {
+		refresh();
+		if (this.contingency == null)
+			this.contingency = new Contingency(this.classes, conf.getTypes().length, this.part, this.partition);
+		return this.contingency;
+	}
+
+	/** Get the cluster of each item found by K-Means in the data space, as many clusters as the types
+	 * of the configuration. The clusters are found once for the dataset.
+	 * @return the clusters, from 1, 0 for no cluster
+	 * */
+	public int[] getFeatureParts() {
+		if (this.features == null) {
+			Cluster[] c = grid.calculateFeatureClusters(conf.getntypes(), this.seed);
+			this.features = Contingency.clustersOf(items.size(), c);
+			this.nfeatures = c.length;
+		}
+		return this.features;
+	}
+
+	/** Get the centroids of the clusters of the current partition of the grid in the data space
+	 * @return the centroids by rows, one row of the number of keys for each cluster of the partition
+	 * */
+	public double[] getCentroids() {
+		refresh();
+		if (this.centroids == null) this.centroids = centroidsOf(this.items, this.part, this.partition.length);
+		return this.centroids;
+	}
+
+	/** Compute the centroids of the clusters in the data space
+	 * @param items the items of the dataset
+	 * @param part the cluster of each item, from 1, 0 for no cluster
+	 * @param k the number of clusters
+	 * @return the centroids by rows, one row of the number of keys for each cluster, zero for an empty cluster
+	 * */
+	public static double[] centroidsOf(ItemStore items, int[] part, int k) {
+		int nkeys = items.getnkeys();
+		double[] f = items.getFeatures();
+		double[] centroids = new double[k * nkeys];
+		long[] sizes = new long[k];
+		for (int i = 0; i < part.length; i++) {
+			if (part[i] == 0) continue;
+			int c = part[i] - 1;
+			for (int j = 0; j < nkeys; j++) centroids[c * nkeys + j] += f[i * nkeys + j];
+			sizes[c]++;
+		}
+		for (int c = 0; c < k; c++)
+			if (sizes[c] > 0) for (int j = 0; j < nkeys; j++) centroids[c * nkeys + j] /= sizes[c];
+		return centroids;
+	}
+
+	/** Compute the inner cluster variance, the mean distance of the items in clusters to the centroid of their cluster
+	 * @param items the items of the dataset
+	 * @param part the cluster of each item, from 1, 0 for no cluster
+	 * @param centroids the centroids of the clusters by rows
+	 * @return the mean distance, NaN if no item is in a cluster
+	 * */
+	public static double innerVariance(ItemStore items, int[] part, double[] centroids) {
+		double[] f = items.getFeatures();
+		int nkeys = items.getnkeys();
+		double sum = 0;
+		double inc = 0.0;
+		for (int i = 0; i < part.length; i++) {
+			if (part[i] == 0) continue;
+			int a = i * nkeys, b = (part[i] - 1) * nkeys;
+			double s = 0;
+			for (int k = 0; k < nkeys; k++) {
+				double d = f[a + k] - centroids[b + k];
+				s += d * d;
+			}
+			sum += Math.sqrt(s);
+			inc++;
+		}
+		return sum/inc;
+	}
+
+/*********** Evaluation ****************************************************************************/
+
+	/** Run all the stages on the current state of the grid
+	 * @return the value of each stage, in the order of the stages
+	 * */
+	public double[] evaluate() {
+		this.partition = null;
+		double[] values = new double[stages.size()];
+		for (int i = 0; i < values.length; i++) values[i] = stages.get(i).compute(this);
+		return values;
+	}
+
+	/** Compute Entropy
+	* @param ignore the positions of items that are currently picked up
+	* @return Entropy computed for the entire grid
+	*/
+	public double computeEntropy(boolean ignore) {
+		int xdim = (int)Math.floor(conf.getxsize()/10);
+		int ydim = (int)Math.floor(conf.getysize()/10);
+		double[][] bins = new double[xdim][ydim];
+		double count = 0;
+		for (Item it : items) {
+			if (ignore && it.isPicked()) continue;
+			bins[(int)Math.floor(it.getX()/10)][(int)Math.floor(it.getY()/10)]++;
+			count++;
+		}
+		double sum = 0;
+		double log2 = Math.log(2);
+		for (int i=0; i < xdim; i++) {
+			for (int j=0; j < ydim; j++) {
+				double p = bins[i][j]/count;
+				if (p > 0) sum += p * Math.log(p)/log2;
+			}}
+		return -sum;
+	}
+
+	/** Compute Inner Cluster Variance, the mean distance of the items in clusters to the centroid of their cluster
+	* @return ICV computed for the entire grid
+	*/
+	public double computeInnerClusterVariance() {
+		double[] c = getCentroids();
+		return innerVariance(this.items, this.part, c);
+	}
+
+	/** Compute the adjusted Rand index of the clusters of the grid against the clusters of K-Means in the data space
+	* @return adjusted Rand index
+	*/
+	public double computeFeatureRand() {
+		int[] f = getFeatureParts();
+		refresh();
+		return new Contingency(f, this.nfeatures, this.part, this.partition).getAdjustedRand();
+	}
+
+	/** Rebuild the shared data when the partition of the grid changed
+	 * */
+	private void refresh() {
+		Cluster[] p = grid.getClusters();
+		if (this.partition == p) return;
+		this.partition = p;
+		this.part = Contingency.clustersOf(items.size(), p);
+		this.contingency = null;
+		this.centroids = null;
+	}
+
+}
@@ -1,13 +1,18 @@
 package antcolony;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Map;
+import java.util.SplittableRandom;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 
 /**
@@ -23,15 +28,27 @@ import java.util.UUID;
  * */
 public class Grid {
 
+	private static final int STRIPES = 16;	// stripes of the indexes of cells, the same for any number of threads so the draws do not depend on it
+
 	private Configuration conf;			// Current configuration
-	private HashMap<UUID,Item> items;	// Current document collection
+	private ItemStore items;			// Current document collection
 	private LinkedList<double[]> centers;
 	private Cluster[] partition;		// partitions
 	private int num_clusters;
-	private LinkedList<Heap> heaps;
-	private UUID[][] cells;				// Cell matrix
-	private UUID[][] hcells;
-	private DistanceMatrix distance;	// Precomputed distance matrix
+	private ArrayList<Heap> heaps;		// heaps on the grid, each at the slot of its index
+	private int xsize, ysize;			// size of the grid
+	private AtomicIntegerArray cells;	// Cell matrix by rows, index of the item or -1 if empty
+	private int[] hcells;				// Cell matrix by rows, index of the heap or -1 if empty
+	private DensityField field;			// Number of items in the windows of the grid
+	private CellIndex itemCells;		// cells occupied by items are marked
+	private CellIndex heapCells;		// cells occupied by heaps are marked
+	private SplittableRandom random;	// generator of the grid, split from the configuration
+	private DistanceProvider distance;	// Distances between items
+	private double[] warm;				// centers of the last evaluation of the clusters, x and y by rows
+	private long[] counts;				// number of items that moved each center
+	private int[] seen;					// cell of each item at the last evaluation of the clusters
+	private double inertia;				// mean squared distance of the items to their centers after K-Means
+	private SplittableRandom sampler;	// generator of the mini-batches, split from the configuration
 
 	
 	/**** Constructor and Initialisation **************************************************************/
@@ -47,16 +64,34 @@ public class Grid {
 		this.items = data.getItems();
 		this.num_clusters = this.items.size();
 		this.partition = new Cluster[this.num_clusters];
-		for (int i=0; i<this.items.size(); i++) this.partition[i]=new Cluster(this.items.values().toArray(new Item[0]));
-		this.heaps = new LinkedList<Heap>();
-		this.cells = new UUID[this.conf.getxsize()][this.conf.getysize()];
-		this.hcells = new UUID[this.conf.getxsize()][this.conf.getysize()];
-		for (int i=0; i < conf.getxsize(); i++){
-			for (int j=0; j< conf.getysize(); j++){
-				this.cells[i][j] = null;
-				this.hcells[i][j] = null;
-				}}
-		this.distance = new DistanceMatrix(data, conf);
+		Cluster all = new Cluster(this.items.toArray());
+		for (int i=0; i<this.items.size(); i++) this.partition[i]=all;
+		this.heaps = new ArrayList<Heap>();
+		this.xsize = this.conf.getxsize();
+		this.ysize = this.conf.getysize();
+		this.cells = new AtomicIntegerArray(this.xsize * this.ysize);
+		this.hcells = new int[this.xsize * this.ysize];
+		for (int c=0; c<this.cells.length(); c++) this.cells.set(c, -1);
+		Arrays.fill(this.hcells, -1);
+		this.field = new DensityField(this.xsize, this.ysize);
+		this.itemCells = new CellIndex(this.xsize * this.ysize, STRIPES);
+		this.heapCells = new CellIndex(this.xsize * this.ysize, STRIPES);
+		this.random = conf.split();
+		switch (conf.getDistances()) {
+		case LAZY :		this.distance = new LazyDistanceMatrix(data, conf);
+						break;
+		case MAPPED :	try {
+							this.distance = new MappedDistanceMatrix(data, conf);
+						}
+						catch (IOException e) {
+							System.out.println("Could not map the distance matrix");
+							e.printStackTrace();
+							this.distance = new DistanceMatrix(data, conf);
+						}
+						break;
+		default :		this.distance = new DistanceMatrix(data, conf);
+						break;
+		}
 		scatterItems();
 	}
 
@@ -68,16 +103,18 @@ public class Grid {
 		int x, y;
 		clear_cells();
 		clear_heaps();
-			for (UUID key : this.items.keySet()) {
-				while(true){
-					x = (int)Math.floor(this.conf.getxsize() * Math.random());
-					y = (int)Math.floor(this.conf.getysize() * Math.random());
-					if ( this.cells[x][y]== null) {
-						this.cells[x][y] = key;
-						items.get(key).setXY(x, y);
-						break;
-					}
+			for (int key = 0; key < this.items.size(); key++) {
+				int c = this.itemCells.sample(false, this.random);
+				if (c == -1) {
+					System.out.println("Alarm no free cell to scatter items");
+					break;
 				}
+				x = c % this.xsize;
+				y = c / this.xsize;
+				this.cells.set(c, key);
+				this.itemCells.mark(c);
+				this.field.add(x, y, 1);
+				items.get(key).setXY(x, y);
 		}
 	}
 	
@@ -86,30 +123,36 @@ public class Grid {
 	* Clear items in the grid
 	*/
 	public void clear_cells() {
-		for (int i=0; i<conf.getxsize(); i++){
-			for (int j=0; j<conf.getysize(); j++){
-				this.cells[i][j]=null;
-				}
-	}}
+		for (int c=0; c<this.cells.length(); c++) this.cells.set(c, -1);
+		this.field.clear();
+		this.itemCells.clear();
+	}
 	
 	/**
 	* Clear the heaps in the grid
 	*/
 	public void clear_heaps() {
-		for (int i=0; i<conf.getxsize(); i++){
-			for (int j=0; j<conf.getysize(); j++){
-				this.hcells[i][j]=null;
-				}
-	}}
+		Arrays.fill(this.hcells, -1);
+		this.heapCells.clear();
+	}
+
+	/** Position of a cell in the cell matrices
+	* @param x the grid x-coordinate
+	* @param y the grid y-coordinate
+	* @return the position of the cell
+	*/
+	private int cell(int x, int y) {
+		return y * this.xsize + x;
+	}
 
 	/**** simple access functions *********************************************************/
 	 
 
 	/**
-	* Get the distance matrix stored in this grid
-	* @return distance matrix
+	* Get the distances between items used by this grid
+	* @return distance provider
 	*/
-	public DistanceMatrix getDistanceMatrix() {
+	public DistanceProvider getDistanceMatrix() {
 		return this.distance;
 	}
 
@@ -119,7 +162,8 @@ public class Grid {
 	* @return the item null if empty
 	*/
 	public Item getItemAt(int x, int y) {
-		return this.items.get(cells[x][y]);
+		int i = cells.get(cell(x,y));
+		return i == -1 ? null : this.items.get(i);
 	}
 	
 	/** Get the Heap for a given grid position
@@ -128,18 +172,12 @@ public class Grid {
 	* @return the heap null if empty
 	*/
 	public Heap heapAt(int x, int y) {
-		UUID id = hcells[x][y];
-		Heap r = null;
-		Iterator<Heap> it = this.heaps.iterator();
-		while (it.hasNext()) {
-			Heap h = it.next();
-			if (h.getID() == id) {
-				r = h;
-				break;
-			}
+		int id = hcells[cell(x,y)];
+		if (id == -1) {
+			System.out.println("Lost heap");
+			return null;
 		}
-		if (r == null) System.out.println("Lost heap");
-		return r;
+		return this.heaps.get(id);
 	}
 
 	/** Check if a cell is occupied by a item
@@ -148,7 +186,7 @@ public class Grid {
 	* @return the boolean state of occupation
 	*/
 	public boolean occupied_item(int x, int y) {
-		return (this.cells[x][y] != null);
+		return (this.cells.get(cell(x,y)) != -1);
 	}
 	
 	/** Check if a cell is occupied by an heap
@@ -157,7 +195,7 @@ public class Grid {
 	* @return the boolean state of occupation
 	*/
 	public boolean occupied_heap(int x, int y) {
-		return (this.hcells[x][y] != null);
+		return (this.hcells[cell(x,y)] != -1);
 	}
 	
 	/** Check if a cell is occupied by an heap
@@ -166,20 +204,75 @@ public class Grid {
 	* @return the boolean state of occupation
 	*/
 	public boolean occupied(int x, int y) {
-		return (this.hcells[x][y] != null || this.cells[x][y]!= null);
+		int c = cell(x,y);
+		return (this.hcells[c] != -1 || this.cells.get(c) != -1);
+	}
+
+	/** Get a random cell of the grid occupied or not by an item, all such cells with the same probability
+	* @param occupied true for a cell occupied by an item, false for a cell without item
+	* @param random the generator to use
+	* @return the cell as y * xsize + x, -1 if there is no such cell
+	*/
+	public int randomItemCell(boolean occupied, SplittableRandom random) {
+		return this.itemCells.sample(occupied, random);
+	}
+
+	/** Get a random cell of the grid occupied or not by an item, all such cells with the same probability.
+	* The cell is found by counting the items of the rows and then of the cells of its row, so it depends only
+	* on the cells of the grid and not on the order in which they were updated. The grid must not change meanwhile.
+	* @param occupied true for a cell occupied by an item, false for a cell without item
+	* @param random the generator to use
+	* @return the cell as y * xsize + x, -1 if there is no such cell
+	*/
+	public int countedItemCell(boolean occupied, SplittableRandom random) {
+		int n = countCells(occupied, 0, 0, xsize, ysize);
+		if (n == 0) return -1;
+		int r = random.nextInt(n);
+		int lo = 0, hi = ysize - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (countCells(occupied, 0, 0, xsize, mid + 1) > r) hi = mid;
+			else lo = mid + 1;
+		}
+		int y = lo;
+		r -= countCells(occupied, 0, 0, xsize, y);
+		lo = 0;
+		hi = xsize - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (countCells(occupied, 0, y, mid + 1, y + 1) > r) hi = mid;
+			else lo = mid + 1;
+		}
+		return y * xsize + lo;
+	}
+
+	/** Count the cells of a rectangle occupied or not by an item
+	* @return the number of cells with x0 &lt;= x &lt; x1 and y0 &lt;= y &lt; y1
+	*/
+	private int countCells(boolean occupied, int x0, int y0, int x1, int y1) {
+		int n = this.field.rect(x0, y0, x1, y1);
+		return occupied ? n : (x1 - x0) * (y1 - y0) - n;
+	}
+	
+	/** Count the cells of the grid occupied or not by an item
+	* @param occupied true to count the cells occupied by an item, false to count the cells without item
+	* @return the number of cells
+	*/
+	public int countItemCells(boolean occupied) {
+		return occupied ? this.itemCells.getMarked() : this.itemCells.getUnmarked();
 	}
 
 	/** Get the collection of items
 	 * @return the collection of items
 	*/
-	public HashMap<UUID,Item> getItems() {
+	public ItemStore getItems() {
 		return this.items;
 	}
 	
 	/** Get the collection of heaps
 	 * @return the collection of heaps
 	*/
-	public LinkedList<Heap> getHeaps() {
+	public ArrayList<Heap> getHeaps() {
 		return this.heaps;
 	}
 	
@@ -211,11 +304,11 @@ public class Grid {
 		this.num_clusters=0;
 		int maxh=0;
 		for (int i=0; i< conf.getxsize();i++){
-			for (int j=0; j< conf.getxsize();j++){
+			for (int j=0; j< conf.getysize();j++){
 				if (occupied_item(i,j)) sum1++;
 				if (occupied_heap(i,j)) sum2++;
 				}}
-		for (UUID key : this.items.keySet()) if (items.get(key).isPicked()) sum3++;
+		for (Item it : this.items) if (it.isPicked()) sum3++;
 		Iterator<Heap> it = this.heaps.iterator();
 		while (it.hasNext()) {
 			Heap h = it.next();
@@ -256,6 +349,8 @@ public class Grid {
 	/** Compute the clusters that exist in this grid for measurement purposes,
 	 *  in case of ANTCLASS models make them equal to the already existing heaps
 	 *  in the case LUMERFAIETA apply K-Means to group items by clusters.
+	 *  With a K-Means batch in the configuration the clusters of the last evaluation are updated
+	 *  from a sample of the items moved since, K-Means runs again when they drift beyond the tolerance.
 	 */
 	public void calculateClusters(){
 		if (conf.getModel()== Configuration.Models.ANTCLASS1 || conf.getModel()== Configuration.Models.ANTCLASS2){
@@ -268,8 +363,9 @@ public class Grid {
 			}
 		}
 		else {
+			if (conf.getKMeansBatch() > 0 && this.warm != null && updateClusters()) return;
 			TreeMap<UUID,Double> map = new TreeMap<UUID,Double>();
-			for (Item it : items.values()) map.put(it.getID(), this.densityRawAt(it.getX(), it.getinitY()));
+			for (Item it : items) map.put(it.getID(), this.densityRawAt(it.getX(), it.getinitY()));
 			map = sortByValues(map);
 			LinkedList<UUID> list = new LinkedList<UUID>();
 			int i=0;
@@ -279,14 +375,142 @@ public class Grid {
 				if (i==conf.getntypes()) break;
 			}
 			KMeans km = new KMeans(this.conf,this.items,0, list,10,2500,2);
+			km.setAccelerated(true);
 			km.compute();
 			this.centers = km.getCenters();
 			this.partition = km.getClusters();
+			if (conf.getKMeansBatch() > 0) keepClusters();
+			}
+	}
+
+	/** Keep the centers found by K-Means to update the clusters in the next evaluations.
+	 *  The generator of the mini-batches is split on the first call, after the setup of the simulation,
+	 *  so the other generators are the same with or without mini-batches.
+	 */
+	private void keepClusters(){
+		if (this.sampler == null) this.sampler = conf.split();
+		KMeans.Metric torus = KMeans.torus(this.xsize, this.ysize);
+		int k = this.partition.length;
+		this.warm = new double[2 * k];
+		this.counts = new long[k];
+		this.seen = new int[this.items.size()];
+		double sum = 0;
+		for (int c=0; c<k; c++){
+			double[] center = this.centers.get(c);
+			this.warm[2*c] = center[0];
+			this.warm[2*c+1] = center[1];
+			for (Item it : this.partition[c].getItems()){
+				double[] p = {it.getX(), it.getY()};
+				double d = torus.distance(p, 0, this.warm, 2*c, 2);
+				sum += d * d;
+				this.counts[c]++;
 			}
+		}
+		for (int i=0; i<this.seen.length; i++) this.seen[i] = cell(this.items.get(i).getX(), this.items.get(i).getY());
+		this.inertia = sum / this.items.size();
+	}
+
+	/** Update the clusters of the last evaluation with a mini-batch of the items moved since then.
+	 *  Each sampled item moves its nearest center by the inverse of the number of items that moved it,
+	 *  then every item joins its nearest center.
+	 * @return false if a center lost all its items or the mean squared distance of the items
+	 * to their centers grew beyond the tolerance, so K-Means has to run again
+	 */
+	private boolean updateClusters(){
+		KMeans.Metric torus = KMeans.torus(this.xsize, this.ysize);
+		int k = this.warm.length / 2;
+		int n = this.items.size();
+		int[] moved = new int[n];
+		int m = 0;
+		for (int i=0; i<n; i++){
+			Item it = this.items.get(i);
+			if (cell(it.getX(), it.getY()) != this.seen[i]) moved[m++] = i;
+		}
+		int b = Math.min(conf.getKMeansBatch(), m);
+		double[] p = new double[2];
+		for (int j=0; j<b; j++){
+			int r = j + this.sampler.nextInt(m - j);
+			int i = moved[r];
+			moved[r] = moved[j];
+			p[0] = this.items.get(i).getX();
+			p[1] = this.items.get(i).getY();
+			int c = nearest(torus, p, k);
+			this.counts[c]++;
+			double eta = 1.0 / this.counts[c];
+			this.warm[2*c] += eta * (p[0] - this.warm[2*c]);
+			this.warm[2*c+1] += eta * (p[1] - this.warm[2*c+1]);
+		}
+		int[] assign = new int[n];
+		int[] size = new int[k];
+		double sum = 0;
+		for (int i=0; i<n; i++){
+			p[0] = this.items.get(i).getX();
+			p[1] = this.items.get(i).getY();
+			int c = nearest(torus, p, k);
+			double d = torus.distance(p, 0, this.warm, 2*c, 2);
+			sum += d * d;
+			assign[i] = c;
+			size[c]++;
+		}
+		if (sum / n > (1 + conf.getKMeansTolerance()) * this.inertia) return false;
+		for (int c=0; c<k; c++) if (size[c] == 0) return false;
+		Item[][] members = new Item[k][];
+		for (int c=0; c<k; c++) members[c] = new Item[size[c]];
+		Arrays.fill(size, 0);
+		for (int i=0; i<n; i++) members[assign[i]][size[assign[i]]++] = this.items.get(i);
+		this.centers = new LinkedList<double[]>();
+		this.partition = new Cluster[k];
+		for (int c=0; c<k; c++){
+			double[] center = {this.warm[2*c], this.warm[2*c+1]};
+			this.centers.add(center);
+			this.partition[c] = new Cluster(members[c], center, c);
+		}
+		for (int i=0; i<n; i++) this.seen[i] = cell(this.items.get(i).getX(), this.items.get(i).getY());
+		return true;
+	}
+
+	/** Find the nearest of the centers kept between evaluations of the clusters
+	 * @param torus the distance on the grid
+	 * @param p the position
+	 * @param k the number of centers
+	 * @return the index of the nearest center
+	 */
+	private int nearest(KMeans.Metric torus, double[] p, int k){
+		int min = 0;
+		double dist_min = Double.MAX_VALUE;
+		for (int c=0; c<k; c++){
+			double d = torus.distance(p, 0, this.warm, 2*c, 2);
+			if (d < dist_min){
+				dist_min = d;
+				min = c;
+			}
+		}
+		return min;
+	}
+
+	/** Cluster the items by their features with K-Means, to validate the clusters found on the grid
+	 *  against a clustering of the data. The centers are seeded by k-means|| with the KMEANS_PARALLEL
+	 *  feature clusters of the configuration, by k-means++ otherwise.
+	 *  The partition of the grid and the clusters shown are not changed.
+	 * @param k the number of clusters
+	 * @param seed the seed of the random centers
+	 * @return the clusters of items
+	 */
+	public Cluster[] calculateFeatureClusters(int k, long seed){
+		int[] shown = new int[this.items.size()];
+		for (int i=0; i<shown.length; i++) shown[i] = this.items.get(i).getCluster();
+		int type = conf.getFeatureClusters() == Configuration.FeatureClusters.KMEANS_PARALLEL ? 3 : 1;
+		KMeans km = new KMeans(this.items, this.items.getFeatures(), this.items.getnkeys(), KMeans.EUCLIDEAN, k, null, 100, seed, type);
+		km.setAccelerated(true);
+		if (conf.getThreads() > 1) km.setPool(conf.getPool());
+		km.compute();
+		for (int i=0; i<shown.length; i++) this.items.get(i).setCluster(shown[i]);
+		return km.getClusters();
 	}
 
 	/** Perform K-Means using heaps centers as seed for K-means clustering, 
 	 * remove all the object from the heaps and cluster in new heaps.
+	 * The nearest center of each item is found in blocks of items on the pool of the configuration.
 	*/
 	public void kmeans_heaps(){
 		if (this.heaps.size()>0){
@@ -301,17 +525,18 @@ public class Grid {
 			centers_xy[i][1]= h.getY();
 			i++;
 		}
+		int nkeys = this.items.getnkeys();
+		double[] flat = new double[i * nkeys];
+		for (int l=0; l<i; l++) System.arraycopy(centers[l], 0, flat, l * nkeys, Math.min(nkeys, centers[l].length));
+		int n = this.items.size();
+		int[] nearest = new int[n];
+		int grain = conf.getThreads() > 1 ? Math.max(256, n / (conf.getThreads() * 16)) : n;
+		AssignBlock block = new AssignBlock(flat, i, nearest, 0, n, grain);
+		if (conf.getThreads() > 1) conf.getPool().invoke(block);
+		else block.compute();
 		Heap[] heaps_temp = new Heap[i];
-		for (UUID key : this.items.keySet()){
-			double dist_min = Double.MAX_VALUE;
-			int min = 0;
-			for (int l=0; l<i; l++){
-				double dist = this.items.get(key).distance_vector(centers[l]);
-				if (dist <dist_min) {
-					dist_min = dist;
-					min = l;
-				}
-				}
+		for (int key = 0; key < n; key++){
+			int min = nearest[key];
 			if (heaps_temp[min]== null)
 				heaps_temp[min]= new Heap(this.conf,centers_xy[min][0],centers_xy[min][1], this.items.get(key));
 			else
@@ -319,44 +544,57 @@ public class Grid {
 		}
 		clear_cells();
 		clear_heaps();
-		this.heaps = new LinkedList<Heap>();
+		this.heaps = new ArrayList<Heap>();
 		for (int l=0; l<i; l++) 
 			if (heaps_temp[l]!= null){
-				int x, y;
-				while(true){
-						x = (int)Math.floor(this.conf.getxsize() * Math.random());
-						y = (int)Math.floor(this.conf.getysize() * Math.random());
-						if ( this.hcells[x][y]== null) {
-							put_heap(x,y,heaps_temp[l]);
-							break;
-						}}
+				int c = this.heapCells.sample(false, this.random);
+				if (c == -1) {
+					System.out.println("Alarm no free cell to place heaps");
+					break;
+				}
+				put_heap(c % this.xsize, c / this.xsize, heaps_temp[l]);
 			}		
 		}
 	}
 	
 	/** Cluster the heaps for ANTCLASS2, try to merge heaps that have close centers.
+	 * The pairs of heaps are visited from the closest centers, the search stops when the distance
+	 * of the pair is larger than the most dissimilar item of every heap.
 	*/
 	public void cluster_heaps(){
 		int l = this.heaps.size();
 		if (l>2){
-		TreeMap<Double,int[]> map = new TreeMap<Double,int[]>();
+		PairQueue queue = new PairQueue(l * (l - 1) / 2);
+		double bound = 0;
 		for (int i=0; i<l-1; i++){
+			Heap h = this.heaps.get(i);
 			for (int j=i+1; j<l;j++)
-				map.put(this.heaps.get(i).computeDistanceCenterMassVector(this.heaps.get(j).getCenterMass()),new int[]{i,j});
+				queue.add(h.computeDistanceCenterMassVector(this.heaps.get(j).getCenterMass()), i, j);
 			}
-		LinkedList<Integer> done = new LinkedList<Integer>();
-		for (Map.Entry<Double,int[]> entry: map.entrySet()){
-			if (!done.contains(entry.getValue()[0]) && !done.contains(entry.getValue()[1]) && done.size() < l-3)
-			if (entry.getKey() < this.heaps.get(entry.getValue()[1]).getMaxDissimilar()){
+		for (int i=0; i<l; i++) bound = Math.max(bound, this.heaps.get(i).getMaxDissimilar());
+		BitSet done = new BitSet(l);
+		int merged = 0;
+		while (!queue.isEmpty() && merged < l-3 && queue.getKey() < bound){
+			int i = queue.getFirst(), j = queue.getSecond();
+			if (!done.get(i) && !done.get(j))
+			if (queue.getKey() < this.heaps.get(j).getMaxDissimilar()){
 				System.out.println("further clustering");
-				this.heaps.get(entry.getValue()[0]).putItems(this.heaps.get(entry.getValue()[1]).getItems());
-				done.add(entry.getValue()[1]);
-				this.heaps.set(entry.getValue()[1], null);
+				this.heaps.get(i).putItems(this.heaps.get(j));
+				bound = Math.max(bound, this.heaps.get(i).getMaxDissimilar());
+				done.set(j);
+				merged++;
+				this.heaps.set(j, null);
 			}
+			queue.remove();
 		}
 		this.heaps.removeAll(Collections.singletonList(null));
 		clear_heaps();
-		for (Heap h : this.heaps) this.hcells[h.getX()][h.getY()]= h.getID();
+		for (int i=0; i<this.heaps.size(); i++) {
+			Heap h = this.heaps.get(i);
+			h.setIndex(i);
+			this.hcells[cell(h.getX(),h.getY())]= i;
+			this.heapCells.mark(cell(h.getX(),h.getY()));
+		}
 		}
 
 		}
@@ -370,11 +608,43 @@ public class Grid {
 	* @param item the Item
 	*/
 	public void put_item(int x, int y, Item item) {
-		if (this.cells[x][y]!=null) System.out.println("Alarm tried to stack items");
+		if (this.cells.getAndSet(cell(x,y), item.getIndex())!=-1) System.out.println("Alarm tried to stack items");
+		else {
+			this.field.add(x, y, 1);
+			this.itemCells.mark(cell(x,y));
+		}
+		item.setPicked(false);
+		item.setXY(x, y);
+	}
+	
+	/** Place a item at a given position on the grid if the cell is free,
+	* the cell is claimed atomically so that two ants can not drop on the same cell
+	* @param x the x position of the item
+	* @param y the y position of the item
+	* @param item the Item
+	* @return true if the item was placed
+	*/
+	public boolean claim_item(int x, int y, Item item) {
+		if (!this.cells.compareAndSet(cell(x,y), -1, item.getIndex())) return false;
+		this.field.add(x, y, 1);
+		this.itemCells.mark(cell(x,y));
 		item.setPicked(false);
-		UUID key = item.getID();
-		this.cells[x][y] = key;
-		this.items.get(key).setXY(x, y);
+		item.setXY(x, y);
+		return true;
+	}
+	
+	/** Remove a given item from a position on the grid if it is still there,
+	* the cell is freed atomically so that two ants can not pick the same item
+	* @param x the x position of the item
+	* @param y the y position of the item
+	* @param item the Item
+	* @return true if the item was removed
+	*/
+	public boolean take_item(int x, int y, Item item) {
+		if (!this.cells.compareAndSet(cell(x,y), item.getIndex(), -1)) return false;
+		this.field.add(x, y, -1);
+		this.itemCells.unmark(cell(x,y));
+		return true;
 	}
 	
 	/** Place a heap at a given position on the grid
@@ -383,11 +653,13 @@ public class Grid {
 	* @param heap the Heap
 	*/
 	public void put_heap(int x, int y, Heap heap) {
-		if (this.hcells[x][y]!=null) {
+		if (this.hcells[cell(x,y)]!=-1) {
 			System.out.println("Alarm tried to stack heaps");
 		}
 		heap.setXY(x, y);
-		this.hcells[x][y]= heap.getID();
+		heap.setIndex(this.heaps.size());
+		this.hcells[cell(x,y)]= heap.getIndex();
+		this.heapCells.mark(cell(x,y));
 		this.heaps.add(heap);
 	}
 	
@@ -396,7 +668,10 @@ public class Grid {
 	* @param y the y position of the item
 	*/
 	public void remove_item(int x, int y) {
-		this.cells[x][y] = null;
+		if (this.cells.getAndSet(cell(x,y), -1) != -1) {
+			this.field.add(x, y, -1);
+			this.itemCells.unmark(cell(x,y));
+		}
 
 	}
 	
@@ -405,14 +680,20 @@ public class Grid {
 	* @param y the y position of the heap
 	*/
 	public void remove_heap(int x, int y) {
-		UUID id = hcells[x][y];
-		Iterator<Heap> it = this.heaps.iterator();
-		done: while (it.hasNext()) 
-			 	if (it.next().getID() == id) {
-			 		it.remove();
-			 		this.hcells[x][y]=null;
-			 		break done;
-			 	}
+		int id = hcells[cell(x,y)];
+		if (id == -1) return;
+		Heap last = this.heaps.remove(this.heaps.size() - 1);
+		if (last.getIndex() != id) {
+			// the last heap takes the slot of the removed one
+			this.heaps.get(id).setIndex(-1);
+			this.heaps.set(id, last);
+			last.setIndex(id);
+			int c = cell(last.getX(), last.getY());
+			if (this.hcells[c] == this.heaps.size()) this.hcells[c] = id;
+		}
+		else last.setIndex(-1);
+		this.hcells[cell(x,y)]=-1;
+		this.heapCells.unmark(cell(x,y));
 	}
 	
 	/** Get the centers of this Grid
@@ -435,8 +716,6 @@ public class Grid {
 	* */
     public double densityAt(int x, int y , Item it) {
 	
-    	int xsize = this.conf.getxsize();
-		int ysize = this.conf.getysize();
 		int sigma = this.conf.getSigma();
 		int xhigh = x + sigma;
 		int yhigh = y + sigma;
@@ -445,21 +724,23 @@ public class Grid {
 	
 		int ih, jh;
 		double sum = 0;
+		double div =  this.distance.getScaleFactor();
+		int key = it.getIndex();
+		AtomicIntegerArray cells = this.cells;
 
 		for (int i = ylow; i <= yhigh; i++) {
+			ih = i;
+			if (ih < 0) ih = ysize + ih%ysize;
+			if (ih >= ysize) ih = ih%ysize;
+			int row = ih * xsize;
 			for (int j = xlow; j <= xhigh; j++) {
-				ih = i;
 				jh = j;			
 				if (jh < 0) jh = xsize + jh%xsize;
 				if (jh >= xsize) jh = jh%xsize;
-				if (ih < 0) ih = ysize + ih%ysize;
-				if (ih >= ysize) ih = ih%ysize;
-		
-				double div =  this.distance.getScaleFactor();
 				
-				if ( occupied_item(jh,ih) && (jh != x || ih != y) ){
-				Item it1 = this.getItemAt(jh, ih);
-				sum += (1 - distance.get(it.getID(),it1.getID())/div);
+				int k = cells.get(row + jh);
+				if ( k != -1 && (jh != x || ih != y) ){
+				sum += (1 - distance.get(key,k)/div);
 				}
 					
 			}
@@ -471,16 +752,62 @@ public class Grid {
 
 	}
 
+	/** Compute in one pass the density of items around several cells, each cell compared to
+	 * the item placed on it, as {@link #densityAt(int, int, Item)} does for one cell.
+	 * The items around each cell are gathered first and then scored in one loop.
+	* @param cand the cells as y * xsize + x
+	* @param n the number of cells
+	* @param keys the array where the index of the item of each cell is stored, -1 if the cell is free
+	* @param out the array where the density of each cell is stored
+	* */
+    public void densityBatch(int[] cand, int n, int[] keys, double[] out) {
+    	
+		int sigma = this.conf.getSigma();
+		int w = sigma*2+1;
+		int[] near = new int[w*w];
+		double div =  this.distance.getScaleFactor();
+		double size = w*w - 1;
+		AtomicIntegerArray cells = this.cells;
+		
+		for (int c = 0; c < n; c++) {
+			int x = cand[c] % xsize;
+			int y = cand[c] / xsize;
+			int key = cells.get(cand[c]);
+			keys[c] = key;
+			if (key == -1) {
+				out[c] = 0;
+				continue;
+			}
+			int m = 0;
+			for (int i = y - sigma; i <= y + sigma; i++) {
+				int ih = i;
+				if (ih < 0) ih = ysize + ih%ysize;
+				if (ih >= ysize) ih = ih%ysize;
+				int row = ih * xsize;
+				for (int j = x - sigma; j <= x + sigma; j++) {
+					int jh = j;
+					if (jh < 0) jh = xsize + jh%xsize;
+					if (jh >= xsize) jh = jh%xsize;
+					int k = cells.get(row + jh);
+					if ( k != -1 && (jh != x || ih != y) ) near[m++] = k;
+				}
+			}
+			double sum = 0;
+			for (int t = 0; t < m; t++) sum += (1 - distance.get(key,near[t])/div);
+			out[c] = Math.max(0.0, (sum/size));
+		}
+	}
+
 	/** Compute the density of items at a given position in the grid
-	 * independently of item type
-	* @param x the cell x coordinates
-	* @param y the cell y coordinates
+	 * independently of item type, counted by the density field when the window fits in the grid
+	* @param x the cell x coordinates, wrapped around the grid
+	* @param y the cell y coordinates, wrapped around the grid
 	* @return the density 
 	* */
     public double densityRawAt(int x, int y ) {
     	
-    	int xsize = this.conf.getxsize();
-		int ysize = this.conf.getysize();
+		x = (x % xsize + xsize) % xsize;
+		y = (y % ysize + ysize) % ysize;
 		int sigma = xsize/5;
 		int xhigh = x + sigma;
 		int yhigh = y + sigma;
@@ -492,17 +819,22 @@ public class Grid {
 		int ih, jh;
 		double sum = 0;
 
-		for (int i = ylow; i <= yhigh; i++) {
+		if (this.field.fits(sigma)) {
+			sum = this.field.count(x, y, sigma);
+			if (this.cells.get(cell(x,y)) != -1) sum--;
+		}
+		else for (int i = ylow; i <= yhigh; i++) {
+			ih = i;
+			if (ih < 0) ih = ysize + ih%ysize;
+			if (ih >= ysize) ih = ih%ysize;
+			int row = ih * xsize;
 			for (int j = xlow; j <= xhigh; j++) {
-				ih = i;
 				jh = j;
 				
 				if (jh < 0) jh = xsize + jh%xsize;
 				if (jh >= xsize) jh = jh%xsize;
-				if (ih < 0) ih = ysize + ih%ysize;
-				if (ih >= ysize) ih = ih%ysize;
 				
-				if ( occupied_item(jh,ih) && (jh != x || ih != y) ) sum++;
+				if ( this.cells.get(row + jh) != -1 && (jh != x || ih != y) ) sum++;
 					
 			}
 		}	
@@ -512,6 +844,57 @@ public class Grid {
 		return Math.max(0.0, (sum/size));
 
 	}	
+
+	/** A block of items assigned to their nearest center, split in halves until it is small enough.
+	 * The features of the items and the centers are read from flat matrices, row-major.
+	 */
+	private class AssignBlock extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private double[] centers;
+		private int k;
+		private int[] nearest;
+		private int lo, hi, grain;
+
+		AssignBlock(double[] centers, int k, int[] nearest, int lo, int hi, int grain) {
+			this.centers = centers;
+			this.k = k;
+			this.nearest = nearest;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+
+		protected void compute() {
+			if (hi - lo <= grain) {
+				double[] f = items.getFeatures();
+				int nkeys = items.getnkeys();
+				for (int key = lo; key < hi; key++) {
+					int a = key * nkeys;
+					double dist_min = Double.MAX_VALUE;
+					int min = 0;
+					for (int l = 0; l < k; l++) {
+						int c = l * nkeys;
+						double sum = 0;
+						for (int j = 0; j < nkeys; j++) {
+							double d = f[a + j] - centers[c + j];
+							sum += d * d;
+						}
+						if (sum < dist_min) {
+							dist_min = sum;
+							min = l;
+						}
+					}
+					nearest[key] = min;
+				}
+			}
+			else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new AssignBlock(centers, k, nearest, lo, mid, grain),
+						new AssignBlock(centers, k, nearest, mid, hi, grain));
+			}
+		}
+	}
 }
 
 
@@ -14,20 +14,32 @@ import java.util.UUID;
  * <li> The heap center
  * <li> The maximum dissimilarity between items
  * </ul>
+ * <p>
+ * The center of mass is kept from the running sum of the data of the items, so adding or removing
+ * an item costs O(d). The mean distance and the most dissimilar item depend on every item, they are
+ * recomputed in one pass only when they are read after the heap changed. The maximum distance is kept
+ * with the pair of items at that distance: an added item is compared with the items of the heap in O(n.d),
+ * a merged heap with the items of this heap, and all the pairs are compared again only when one item
+ * of the pair is removed.
  * 
  * @author      Antnio Fonseca
- * @version     1.6
+ * @version     1.8
  * @since       1.0
  * */
 public class Heap {
 	private UUID id;							// id of the heap
+	private int index = -1;					// index of the heap in the grid
 	private int x,y;						// coordinates of the heap
 	private Configuration conf;
 	private double max_distance;			// the maximum distance between two objects
+	private Item max_a, max_b;				// the pair of items at the maximum distance
 	private double[]  center_of_mass;			// the object corresponding to the center of mass of this heap
 	private UUID most_dissimilar; 			// the most dissimilar object
 	private double max_dissimilar;
 	private double mean_distance;			// mean distance between all the objects and the center of mass
+	private double[] sum;					// sum of the data of the items
+	private boolean stale;					// mean distance and most dissimilar to be recomputed
+	private boolean stale_max;				// maximum distance to be recomputed, after removing an item of the pair
 	private LinkedList<Item> items; 		// data carried by the item
 	private int pheromone;
 	private boolean picked;
@@ -51,6 +63,8 @@ public class Heap {
 		it1.setXY(x_i, y_i);
 		this.items.add(it1);
 		this.center_of_mass = new double[conf.getnkeys()];
+		this.sum = new double[conf.getnkeys()];
+		this.addSum(it1, 1);
 		this.putItem(it2);
 		this.pheromone = 500;
 		this.picked = false;
@@ -71,6 +85,9 @@ public class Heap {
 		it1.setXY(x_i, y_i);
 		this.items.add(it1);
 		this.center_of_mass = new double[conf.getnkeys()];
+		this.sum = new double[conf.getnkeys()];
+		this.addSum(it1, 1);
+		this.computeCenterMass();
 		this.pheromone = 500;
 		this.picked = false;
 	}
@@ -84,6 +101,7 @@ public class Heap {
 	 * @return measure of maximum distance
 	 */
 	public double getMaxDistance() {
+		if (this.stale_max) this.computeMaxDistance();
 		return this.max_distance;
 	}
 	
@@ -91,6 +109,7 @@ public class Heap {
 	 * @return the measure of distance most dissimilar
 	 */
 	public double getMaxDissimilar() {
+		if (this.stale) this.computeMostDissimilar();
 		return this.max_dissimilar;
 	}
 	
@@ -105,6 +124,7 @@ public class Heap {
 	 * @return the most dissimilar item UUID
 	 */
 	public UUID getMostDissimilar() {
+		if (this.stale) this.computeMostDissimilar();
 		return this.most_dissimilar;
 	}
 	
@@ -115,10 +135,25 @@ public class Heap {
 	return this.id;
 	}
 	
+	/** Get the index of the heap in the grid
+	 * @return the index, -1 if the heap is not on a grid
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+	
+	/** Set the index of the heap in the grid
+	 * @param i the index
+	 */
+	void setIndex(int i) {
+		this.index = i;
+	}
+	
 	/** get the mean distance between items
 	 * @return the mean distance
 	 */
 	public double getMeanDistance() {
+		if (this.stale) this.computeMostDissimilar();
 		return this.mean_distance;
 	}
 	
@@ -180,21 +215,20 @@ public class Heap {
 /*********** Calculate values ****************************************************************************/
 
 	
-/** Compute the center of mass of this heap and store it on the heap
+/** Compute the center of mass of this heap from the sum of the data of its items and store it on the heap
 */
 public void computeCenterMass(){
-	for (int i=0; i<conf.getnkeys(); i++) this.center_of_mass[i]=0;
-	Iterator<Item> it = this.items.iterator();
-	while (it.hasNext()){
-		Item i = it.next();
-		Iterator<Double> it1 = i.getData().iterator();
-		int j=0;
-		while (it1.hasNext()){
-			this.center_of_mass[j] += it1.next();
-			j++;
-		}
-	}
-	for (int i=0; i<conf.getnkeys(); i++) center_of_mass[i]=center_of_mass[i]/(double)this.items.size();
+	if (this.items.isEmpty()) return;
+	for (int i=0; i<conf.getnkeys(); i++) center_of_mass[i]=this.sum[i]/(double)this.items.size();
+}
+
+/** Add or subtract the data of an item to the sum of the heap
+ * @param i the item
+ * @param sign 1 to add the item, -1 to subtract it
+*/
+private void addSum(Item i, int sign){
+	int n = Math.min(i.getDimension(), this.sum.length);
+	for (int j=0; j<n; j++) this.sum[j] += sign * i.getData(j);
 }
 
 /** Compute the distance from this item to the center of mass of this heap
@@ -202,14 +236,7 @@ public void computeCenterMass(){
  * @return the distance
 */
 public double computeDistanceCenterMass(Item i){
-		Iterator<Double> it = i.getData().iterator();
-		int j=0;
-		double sum = 0.0;
-		while (it.hasNext()){
-			sum += Math.pow(this.center_of_mass[j] - (Double)it.next(),2);
-			j++;
-		}
-		return Math.sqrt(sum);
+		return i.distance_vector(this.center_of_mass);
 }
 
 /** Compute the distance from a vector to the center of mass of this heap
@@ -218,49 +245,75 @@ public double computeDistanceCenterMass(Item i){
 */
 public double computeDistanceCenterMassVector(double[] v){
 	double sum = 0.0;
-	for (int i=0; i<v.length; i++) sum += Math.pow(this.center_of_mass[i] - v[i],2);
+	for (int i=0; i<v.length; i++) {
+		double d = this.center_of_mass[i] - v[i];
+		sum += d * d;
+	}
 	return Math.sqrt(sum);
 }
 
-/** Compute the most dissimilar item and store his reference on the heap
+/** Compute the most dissimilar item and the mean distance between the items and the center of mass
+ * in one pass and store them on the heap
 */
 public void computeMostDissimilar(){
 	Iterator<Item> it = this.items.iterator();
+	double mean_d = 0;
 	this.max_dissimilar = 0;
 	while (it.hasNext()){
 		Item i = it.next();
 		double dist = this.computeDistanceCenterMass(i);
+		mean_d += dist;
 		if (dist >= this.max_dissimilar){
 			this.max_dissimilar = dist;
 			this.most_dissimilar = i.getID();
 		}
-	}	
+	}
+	this.mean_distance = mean_d / (double)this.items.size();
+	this.stale = false;
 }
 
 /** Compute the mean distance between items and store it on the heap
 */
 public void computeMeanDistance(){
-	Iterator<Item> it = this.items.iterator();
-	double mean_d = 0;
-	while (it.hasNext())mean_d += this.computeDistanceCenterMass(it.next());
-	this.mean_distance = mean_d / (double)this.items.size();
+	this.computeMostDissimilar();
+}
+
+/** Compute the maximum distance between two items of the heap and store it on the heap
+*/
+public void computeMaxDistance(){
+	this.max_distance = 0;
+	this.max_a = null;
+	this.max_b = null;
+	Item[] a = this.items.toArray(new Item[this.items.size()]);
+	for (int i=0; i<a.length; i++)
+		for (int j=i+1; j<a.length; j++) this.updateMaxDistance(a[i], a[j]);
+	this.stale_max = false;
+}
+
+/** Keep a pair of items as the pair at the maximum distance if they are farther apart
+ * @param a first item
+ * @param b second item
+*/
+private void updateMaxDistance(Item a, Item b){
+	double dist = a.distance(b, 2);
+	if (dist > this.max_distance){
+		this.max_distance = dist;
+		this.max_a = a;
+		this.max_b = b;
+	}
 }
 
-/** Put an item on the heap and update all the heap metrics
+/** Put an item on the heap and update the center of mass and the maximum distance,
+ * the other heap metrics are recomputed when they are read
  * @param i item to put
 */
 public void putItem(Item i){
-	Iterator<Item> it = this.items.iterator();
-	while (it.hasNext()){
-		Item j = it.next();
-		double dist = i.distance(j, 2);
-		if (dist > this.max_distance)this.max_distance = dist;
-		}
 	i.setXY(this.x, this.y);
+	if (!this.stale_max) for (Item j : this.items) this.updateMaxDistance(j, i);
 	this.items.add(i);
+	this.addSum(i, 1);
 	this.computeCenterMass();
-	this.computeMeanDistance();
-	this.computeMostDissimilar();
+	this.stale = true;
 }
 
 /** Put a list of items on the heap and update all the heap metrics
@@ -271,26 +324,49 @@ public void putItems(LinkedList<Item> items){
 	while (it.hasNext()) this.putItem(it.next());	
 }
 
+/** Merge another heap on this heap, the items of the other heap are moved to this heap
+ * and the center of mass is the mean of both centers weighted by the sizes of the heaps.
+ * The maximum distance is the larger of the two heaps and of the pairs across them
+ * @param h heap to merge
+*/
+public void putItems(Heap h){
+	Iterator<Item> it = h.getItems().iterator();
+	while (it.hasNext()) it.next().setXY(this.x, this.y);
+	if (!this.stale_max && !h.stale_max) {
+		if (h.max_distance > this.max_distance) {
+			this.max_distance = h.max_distance;
+			this.max_a = h.max_a;
+			this.max_b = h.max_b;
+		}
+		for (Item a : h.getItems())
+			for (Item b : this.items) this.updateMaxDistance(b, a);
+	}
+	else this.stale_max = true;
+	this.items.addAll(h.getItems());
+	for (int j=0; j<this.sum.length; j++) this.sum[j] += h.sum[j];
+	this.computeCenterMass();
+	this.stale = true;
+}
+
 
 /** Get an item from this heap by its UUID and remove it
  * @param id of the item
- * @return item
+ * @return item, null if the item is not on the heap
 */
 public Item getItem(UUID id){
-	Item r = null;
 	Iterator<Item> it = this.items.iterator();
-	done: while (it.hasNext()) {
-		r = it.next();
+	while (it.hasNext()) {
+		Item r = it.next();
 		if (r.getID()==id) {
 			it.remove();
-			break done ;
+			this.addSum(r, -1);
+			this.computeCenterMass();
+			this.stale = true;
+			if (r == this.max_a || r == this.max_b) this.stale_max = true;
+			return r;
 		}
 	}
-	LinkedList<Item> list = new LinkedList<Item>(this.items);
-	this.items= new LinkedList<Item>();
-	it = list.iterator();
-	while(it.hasNext()) this.putItem(it.next());
-	return r;
+	return null;
 }
 
 /** Set the picked status of this heap
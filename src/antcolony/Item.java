@@ -1,8 +1,6 @@
 package antcolony;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.SplittableRandom;
 import java.util.UUID;
 
 
@@ -25,12 +23,15 @@ import java.util.UUID;
 public class Item {
 	
 	private UUID id;
+	private int index = -1;					// index of the item in its store
 	private int x,y;						// position on the grid
 	private int x_init,y_init;				// starting position
 	private int xsize, ysize;				// size of grid
 	private String type;					// the type of the item
 	private int color;						// the color of the item to display
-	private List<Double> data; 				// data carried by the item
+	private double[] data; 					// data carried by the item, possibly shared with other items
+	private int offset;						// start of the data of this item in the data array
+	private int nkeys;						// dimension of the data
 	private boolean isPicked = false;		// flag whether item is picked
 	private int cluster;					// number of the cluster to which belong			//
 
@@ -41,20 +42,21 @@ public class Item {
 	 * @param c current configuration of the simulation
 	 * @param t the type of the item
 	 * @param cl the color of the item
-	 * @param a the list of data of this item
+	 * @param a the array of data of this item
 	 * */
-	public Item(UUID key, Configuration c, String t, int cl, List<Double> a) {
+	public Item(UUID key, Configuration c, String t, int cl, double[] a) {
 		this.id = key;
 		this.xsize = c.getxsize();
 		this.ysize = c.getysize();
-		this.x_init = (int)(Math.random()* xsize);
-		this.y_init = (int)(Math.random()* ysize);
+		SplittableRandom random = c.split();
+		this.x_init = random.nextInt(xsize);
+		this.y_init = random.nextInt(ysize);
 		this.x = this.x_init;
 		this.y = this.y_init;
 		this.type = t;
 		this.color = cl;
 		this.cluster = 0;
-		this.data = a;
+		this.setData(a);
 		this.isPicked = false;
 	}
 
@@ -65,9 +67,9 @@ public class Item {
 	 * @param y_i initial position y coordinate
 	 * @param t the type of the item
 	 * @param cl the color of the item
-	 * @param a the list of data of this item
+	 * @param a the array of data of this item
 	 * */
-	public Item(UUID key, Configuration c, int x_i, int y_i, String t,int cl, List<Double> a) {
+	public Item(UUID key, Configuration c, int x_i, int y_i, String t,int cl, double[] a) {
 		this.id = key;
 		this.xsize = c.getxsize();
 		this.ysize = c.getysize();
@@ -78,7 +80,7 @@ public class Item {
 		this.type = t;
 		this.color = cl;
 		this.cluster = 0;
-		this.data = a;
+		this.setData(a);
 		this.isPicked = false;
 	}
 		
@@ -110,11 +112,16 @@ public class Item {
 						d = Math.sqrt(xdiff*xdiff + ydiff*ydiff);
 						break;
 						
-		case 2 :		List<Double> other = i.getData();
-						Iterator<Double> it = this.data.iterator();
-						Iterator<Double> it1 = other.iterator();
+		case 2 :		double[] a = this.data;
+						double[] b = i.data;
+						int off = this.offset;
+						int off1 = i.offset;
+						int n = Math.min(this.nkeys, i.nkeys);
 						double sum = 0;
-						while (it.hasNext() && it1.hasNext()) sum += Math.pow((Double)it.next()-(Double)it1.next(),2);
+						for (int k = 0; k < n; k++) {
+							double diff = a[off + k] - b[off1 + k];
+							sum += diff * diff;
+						}
 						d = Math.sqrt(sum);
 						break;
 		case 3 :		if (this.type.equals(i.getType())) d=0; else d=1;
@@ -132,12 +139,12 @@ public class Item {
 	 * @return the distance
 	 */
 	public double distance_vector(double[] v) {
-		Iterator<Double> it = this.data.iterator();
+		double[] a = this.data;
+		int off = this.offset;
 		double sum = 0;
-		int i=0;
-		while (it.hasNext()){
-			sum += Math.pow((Double)it.next()-v[i],2);
-			i++;
+		for (int k = 0; k < this.nkeys; k++) {
+			double diff = a[off + k] - v[k];
+			sum += diff * diff;
 		}
 		return Math.sqrt(sum);
 	}
@@ -168,17 +175,47 @@ public class Item {
 	}
     	
 	/** Get data of the item
-	 * @return the associated document vector
+	 * @return a copy of the associated document vector
+	 */
+	public double[] getData() {
+		double[] r = new double[this.nkeys];
+		System.arraycopy(this.data, this.offset, r, 0, this.nkeys);
+		return r;
+	}
+	
+	/** Get one value of the data of the item
+	 * @param k the key of the value
+	 * @return the value
 	 */
-	public List<Double> getData() {
-	return this.data;
+	public double getData(int k) {
+		return this.data[this.offset + k];
+	}
+	
+	/** Get the dimension of the data of the item
+	 * @return the number of keys
+	 */
+	public int getDimension() {
+		return this.nkeys;
 	}
 	
 	/** Set data of the item
-	 * @param a - the List representing the data carried by the item
+	 * @param a - the array representing the data carried by the item
 	*/
-	public void setData(LinkedList<Double> a) {
+	public void setData(double[] a) {
 		this.data = a;
+		this.offset = 0;
+		this.nkeys = a.length;
+	}
+	
+	/** Make the data of the item a view on a row of a shared array
+	 * @param a the shared array
+	 * @param off the start of the row of this item
+	 * @param n the length of the row, the dimension of the data from now on
+	*/
+	void attach(double[] a, int off, int n) {
+		this.data = a;
+		this.offset = off;
+		this.nkeys = n;
 	}
 	
 	/** Get the id  of the item
@@ -188,6 +225,20 @@ public class Item {
 		return this.id;
 	}
 
+	/** Get the index of the item in its store
+	 * @return the index, -1 if the item is not in a store
+	*/
+	public int getIndex() {
+		return this.index;
+	}
+
+	/** Set the index of the item in its store
+	 * @param i the index
+	*/
+	void setIndex(int i) {
+		this.index = i;
+	}
+
 	/** Set the cluster id  of the item
 	 * @param c the cluster
 	*/
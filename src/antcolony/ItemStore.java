@@ -0,0 +1,202 @@
+package antcolony;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * The ItemStore class is a dense, index based container for the items of a dataset.
+ * <p>
+ * Each item added to the store receives a stable int index, from 0 to size()-1, which is
+ * used by the grid, the distance matrix and the measures to address the item without hashing.
+ * The data carried by the items is kept in one contiguous array of doubles, row-major,
+ * with one row of <b>nkeys</b> values per item, and each item holds a view on its row.
+ * The UUID of the item is kept only for external identity.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class ItemStore implements Iterable<Item> {
+
+	private Item[] items;						// items by index
+	private UUID[] ids;							// item ids by index
+	private HashMap<UUID,Integer> index;		// index of each item id
+	private double[] features;					// row-major n x nkeys data of the items
+	private int nkeys;							// dimension of the data
+	private int size;							// number of items in the store
+
+/*********** Constructor ****************************************************************************/
+
+	/** Constructor of an empty store
+	 * @param capacity the expected number of items
+	 * @param nkeys the dimension of the data of each item
+	 * */
+	public ItemStore(int capacity, int nkeys) {
+		capacity = Math.max(capacity, 10);
+		this.items = new Item[capacity];
+		this.ids = new UUID[capacity];
+		this.index = new HashMap<UUID,Integer>(capacity * 2);
+		this.features = new double[capacity * nkeys];
+		this.nkeys = nkeys;
+		this.size = 0;
+	}
+
+/*********** Access & Modification Functions ****************************************************************************/
+
+	/** Add an item to the store, move its data to the shared array and assign its index
+	 * @param it the item to add
+	 * @return the index of the item
+	 * */
+	public int add(Item it) {
+		if (this.size == this.items.length) grow();
+		int i = this.size;
+		int off = i * this.nkeys;
+		int n = Math.min(it.getDimension(), this.nkeys);
+		for (int k = 0; k < n; k++) this.features[off + k] = it.getData(k);
+		it.attach(this.features, off, this.nkeys);
+		this.items[i] = it;
+		this.ids[i] = it.getID();
+		this.index.put(it.getID(), i);
+		it.setIndex(i);
+		this.size++;
+		return i;
+	}
+
+	/** Get the number of items in the store
+	 * @return number of items
+	 * */
+	public int size() {
+		return this.size;
+	}
+
+	/** Get the dimension of the data of the items
+	 * @return number of keys
+	 * */
+	public int getnkeys() {
+		return this.nkeys;
+	}
+
+	/** Get an item by its index
+	 * @param i the index of the item
+	 * @return the item
+	 * */
+	public Item get(int i) {
+		return this.items[i];
+	}
+
+	/** Get an item by its UUID
+	 * @param id the UUID of the item
+	 * @return the item, null if not in the store
+	 * */
+	public Item get(UUID id) {
+		Integer i = this.index.get(id);
+		return i == null ? null : this.items[i];
+	}
+
+	/** Get the index of an item by its UUID
+	 * @param id the UUID of the item
+	 * @return the index, -1 if not in the store
+	 * */
+	public int indexOf(UUID id) {
+		Integer i = this.index.get(id);
+		return i == null ? -1 : i;
+	}
+
+	/** Get the UUID of the item at a given index
+	 * @param i the index of the item
+	 * @return the UUID of the item
+	 * */
+	public UUID getID(int i) {
+		return this.ids[i];
+	}
+
+	/** Get the contiguous row-major array with the data of all the items.
+	 * The data of item i starts at i * getnkeys().
+	 * @return the array of data, its length may exceed size() * getnkeys()
+	 * */
+	public double[] getFeatures() {
+		return this.features;
+	}
+
+	/** Get all the items in an array ordered by index
+	 * @return array with the items
+	 * */
+	public Item[] toArray() {
+		Item[] r = new Item[this.size];
+		System.arraycopy(this.items, 0, r, 0, this.size);
+		return r;
+	}
+
+	/** Iterate the items by index
+	 * @return the iterator
+	 * */
+	public Iterator<Item> iterator() {
+		return new Iterator<Item>() {
+			private int i = 0;
+			public boolean hasNext() {
+				return i < size;
+			}
+			public Item next() {
+				if (i >= size) throw new NoSuchElementException();
+				return items[i++];
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+/********** Distance functions********************************************************************************************/
+
+	/** The euclidean distance between the data of two items
+	 * @param i index of one item
+	 * @param j index of the other item
+	 * @return the value of the distance
+	 * */
+	public double distance(int i, int j) {
+		double[] f = this.features;
+		int a = i * this.nkeys;
+		int b = j * this.nkeys;
+		double sum = 0;
+		for (int k = 0; k < this.nkeys; k++) {
+			double d = f[a + k] - f[b + k];
+			sum += d * d;
+		}
+		return Math.sqrt(sum);
+	}
+
+	/** The euclidean distance between the data of an item and a vector
+	 * @param i index of the item
+	 * @param v the vector
+	 * @return the value of the distance
+	 * */
+	public double distance(int i, double[] v) {
+		double[] f = this.features;
+		int a = i * this.nkeys;
+		double sum = 0;
+		for (int k = 0; k < this.nkeys; k++) {
+			double d = f[a + k] - v[k];
+			sum += d * d;
+		}
+		return Math.sqrt(sum);
+	}
+
+	/** Double the capacity of the store
+	 * */
+	private void grow() {
+		int capacity = this.items.length * 2;
+		Item[] it = new Item[capacity];
+		System.arraycopy(this.items, 0, it, 0, this.size);
+		this.items = it;
+		UUID[] id = new UUID[capacity];
+		System.arraycopy(this.ids, 0, id, 0, this.size);
+		this.ids = id;
+		double[] f = new double[capacity * this.nkeys];
+		System.arraycopy(this.features, 0, f, 0, this.size * this.nkeys);
+		this.features = f;
+		for (int i = 0; i < this.size; i++) this.items[i].attach(f, i * this.nkeys, this.nkeys);
+	}
+
+}
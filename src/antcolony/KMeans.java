@@ -1,6 +1,8 @@
 package antcolony;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 
@@ -8,19 +10,83 @@ import java.util.*;
  * Basic implementation of K-means clustering.  Since it's a Runnable, it's 
  * designed to be executed by a dedicated thread, but that thread
  * does not create any other threads to divide up the work.
- * 
- * @version     1.0
+ * <p>
+ * The coordinates are the rows of a flat matrix of any dimension, the positions
+ * of the items on the grid or the features of the items, compared by a {@link Metric}.
+ * <p>
+ * In the accelerated mode the distances are not cached, each coordinate keeps an upper bound
+ * of the distance to its cluster and a lower bound of the distance to the other clusters,
+ * moved by the triangle inequality when the centers move (Hamerly, 2010). A coordinate is
+ * compared with the centers only when the bounds do not prove its cluster is still the nearest,
+ * so the clusters are the same as in the normal mode.
+ *
+ * @version     1.2
  * @since       1.0
  */
 public class KMeans {
 
+    // Number of rounds drawing candidates in the k-means|| seeding
+    private static final int SEED_ROUNDS = 5;
+
+    /**
+     * A distance between two rows of flat matrices of coordinates.
+     */
+    public interface Metric {
+
+        /**
+         * Compute the distance between two rows.
+         *
+         * @param a the first matrix
+         * @param i the offset of the row in the first matrix
+         * @param b the second matrix
+         * @param j the offset of the row in the second matrix
+         * @param dim the number of coordinates of a row
+         * @return the distance
+         */
+        double distance(double[] a, int i, double[] b, int j, int dim);
+    }
+
+    /**
+     * The euclidean distance between two rows.
+     */
+    public static final Metric EUCLIDEAN = new Metric() {
+        public double distance(double[] a, int i, double[] b, int j, int dim) {
+            double sum = 0;
+            for (int k = 0; k < dim; k++) {
+                double d = a[i + k] - b[j + k];
+                sum += d * d;
+            }
+            return Math.sqrt(sum);
+        }
+    };
+
+    /**
+     * The euclidean distance between two positions of a toroidal grid,
+     * the rows hold the x and y coordinates.
+     *
+     * @param xsize the width of the grid
+     * @param ysize the height of the grid
+     * @return the metric
+     */
+    public static Metric torus(final int xsize, final int ysize) {
+        return new Metric() {
+            public double distance(double[] a, int i, double[] b, int j, int dim) {
+                double xdiff = Math.abs(b[j] - a[i]);
+                xdiff = Math.min(xdiff, xsize-xdiff);
+                double ydiff = Math.abs(b[j + 1] - a[i + 1]);
+                ydiff = Math.min(ydiff, ysize-ydiff);
+                return Math.sqrt(xdiff*xdiff + ydiff*ydiff);
+            }
+        };
+    }
+
     // Temporary clusters used during the clustering process.  Converted to
     // an array of the simpler class Cluster at the conclusion.
     private ProtoCluster[] mProtoClusters;
 
-    // Cache of coordinate-to-cluster distances. Number of entries = 
-    // number of clusters X number of coordinates.
-    private double[][] mDistanceCache;
+    // Cache of coordinate-to-cluster distances, row-major with one row
+    // of mK entries per coordinate.
+    private double[] mDistanceCache;
 
     // Used in makeAssignments() to figure out how many moves are made
     // during each iteration -- the cluster assignment for coordinate n is
@@ -29,13 +95,15 @@ public class KMeans {
     private int[] mClusterAssignments;
 
     // List of items to be clustered
-    private HashMap<UUID,Item> items;
-    
-    // an auxiliary dictionary of item ids
-    private UUID[] dictionary;
+    private ItemStore items;
     
-    // 2D array holding the coordinates to be clustered.
-    private double[][] mCoordinates;
+    // Flat array holding the coordinates to be clustered, row-major
+    // with mDim entries per coordinate, and the number of coordinates.
+    private double[] mCoordinates;
+    private int mDim, mCount;
+
+    // The distance between coordinates and centers
+    private Metric mMetric;
     // The desired number of clusters and maximum number
     // of iterations.
     private int mK, mMaxIterations;
@@ -48,49 +116,82 @@ public class KMeans {
     
     // The type of seed centering
     private int type;
-    
-    // The sizes of the grid
-    private int xsize, ysize;
-    
+
     // A list of the centers
     private LinkedList<double[]> centers;
     
     // A list of the seed centers
     private LinkedList<UUID> init_centers;
+
+    // Whether the triangle inequality bounds are used instead of the distance cache
+    private boolean mAccelerated;
+
+    // The pool that seeds the centers in parallel, null to seed them on this thread
+    private ForkJoinPool mPool;
+
+    // Upper bound of the distance of each coordinate to the center of its cluster,
+    // and lower bound of the distance to the centers of the other clusters.
+    private double[] mUpper, mLower;
   
     /**
-     * Constructor
-     * 
+     * Constructor clustering the items by their positions on the grid
+     *
      * @param conf The configuration of the current running simulation
      * @param it the list of items to be clustered
      * @param k  the number of desired clusters.
      * @param list the list of initial centers
      * @param maxIterations the maximum number of clustering iterations.
      * @param randomSeed seed used with the random number generator.
-     * @param t the type of initial centers, 0 - random centers, 1 - k-means++ , 2 - given in the list
+     * @param t the type of initial centers, 0 - random centers, 1 - k-means++ , 2 - given in the list, 3 - k-means||
+     */
+    public KMeans(Configuration conf, ItemStore it, int k, LinkedList<UUID> list, int maxIterations, long randomSeed, int t) {
+    	this(it, positions(it), 2, torus(conf.getxsize(), conf.getysize()), k, list, maxIterations, randomSeed, t);
+    }
+
+    /**
+     * Constructor clustering the items by the rows of a matrix of coordinates
+     *
+     * @param it the list of items to be clustered
+     * @param coordinates the flat matrix of coordinates, one row of dim entries per item
+     * @param dim the number of coordinates of an item
+     * @param metric the distance between coordinates
+     * @param k  the number of desired clusters.
+     * @param list the list of initial centers
+     * @param maxIterations the maximum number of clustering iterations.
+     * @param randomSeed seed used with the random number generator.
+     * @param t the type of initial centers, 0 - random centers, 1 - k-means++ , 2 - given in the list, 3 - k-means||
      */
-    public KMeans(Configuration conf, HashMap<UUID,Item> it, int k, LinkedList<UUID> list, int maxIterations, long randomSeed, int t) {
+    public KMeans(ItemStore it, double[] coordinates, int dim, Metric metric, int k, LinkedList<UUID> list, int maxIterations, long randomSeed, int t) {
 
-    	this.xsize = conf.getxsize();
-    	this.ysize = conf.getysize();
-    	mCoordinates = new double[it.size()][3];
-    	dictionary = new UUID[it.size()];
+    	mCoordinates = coordinates;
+    	mDim = dim;
+    	mCount = it.size();
+    	mMetric = metric;
     	items = it;
     	type = t;
-        int i = 0;
-        for (Map.Entry<UUID, Item> entry : it.entrySet()) {
-        	mCoordinates[i][0] = entry.getValue().getX();
-        	mCoordinates[i][1] = entry.getValue().getY();
-        	dictionary[i] = entry.getValue().getID();
-        	i++;
-        }
         init_centers = list;
         if (k==0) mK = list.size();
-        else mK = Math.min(k, mCoordinates.length);
+        else mK = Math.min(k, mCount);
         mMaxIterations = maxIterations;
         mRandomSeed = randomSeed;
     }
 
+    /**
+     * Build the flat matrix of the positions of the items on the grid.
+     *
+     * @param it the list of items
+     * @return the matrix, one row with x and y per item
+     */
+    private static double[] positions(ItemStore it) {
+    	double[] p = new double[2 * it.size()];
+        for (int i = 0; i < it.size(); i++) {
+        	Item item = it.get(i);
+        	p[2*i] = item.getX();
+        	p[2*i+1] = item.getY();
+        }
+        return p;
+    }
+
     /**
      * Get the clusters computed by the algorithm.  This method should
      * not be called until clustering has completed successfully.
@@ -109,6 +210,25 @@ public class KMeans {
     public LinkedList<double[]> getCenters() {
         return centers;
     }
+
+    /**
+     * Set the accelerated mode, bounding the distances by the triangle
+     * inequality instead of computing them at every iteration.
+     * 
+     * @param b true to use the accelerated mode
+     */
+    public void setAccelerated(boolean b) {
+        mAccelerated = b;
+    }
+
+    /**
+     * Set the pool used to compute the distances to the seeds in parallel.
+     * 
+     * @param pool the pool, null to compute them on this thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        mPool = pool;
+    }
     
     /**
      * Run the clustering algorithm.
@@ -118,18 +238,8 @@ public class KMeans {
         try {
             
             initCenters();
-            computeDistances();
-            makeAssignments();
-
-            // Number of moves in the iteration and the iteration counter.
-            int moves = 0, it = 0;
-            
-            do {
-                computeCenters();
-                computeDistances();
-                moves = makeAssignments();
-                it++;
-            } while (moves > 0 && it < mMaxIterations);
+            if (mAccelerated) computeBounded();
+            else computeCached();
 
             mClusters = generateFinalClusters();
             
@@ -141,12 +251,31 @@ public class KMeans {
     }
 
     /**
-     * Randomly select coordinates to be the initial cluster centers.
+     * Run the iterations with the distance cache.
+     */
+    private void computeCached() {
+
+        computeDistances();
+        makeAssignments();
+
+        // Number of moves in the iteration and the iteration counter.
+        int moves = 0, it = 0;
+        
+        do {
+            computeCenters();
+            computeDistances();
+            moves = makeAssignments();
+            it++;
+        } while (moves > 0 && it < mMaxIterations);
+    }
+
+    /**
+     * Select the coordinates to be the initial cluster centers.
      */
     private void initCenters() {
 
         Random random = new Random(mRandomSeed);     
-        int coordCount = mCoordinates.length;
+        int coordCount = mCount;
         if (mClusterAssignments == null) {
             mClusterAssignments = new int[coordCount];
             Arrays.fill(mClusterAssignments, -1);
@@ -167,40 +296,164 @@ public class KMeans {
             }
         }
 
+        int[] seeds;
+        switch (type){
+        case 1 : 		seeds = seedPlusPlus(random, indices[0]);
+        				break;
+        case 2 : 		seeds = new int[mK];
+        				for (int i=0; i<mK; i++) seeds[i] = items.indexOf(init_centers.get(i));
+        				break;
+        case 3 : 		seeds = seedParallel(random, indices[0]);
+        				break;
+        default : 		seeds = Arrays.copyOf(indices, mK);
+        				break;
+        }
+
         mProtoClusters = new ProtoCluster[mK];
-        ArrayList<Integer> ind = new ArrayList<Integer>();
         for (int i=0; i<mK; i++) {
-            int coordIndex = indices[i];
-            switch (type){
-            case 0 : 		mProtoClusters[i] = new ProtoCluster(mCoordinates[coordIndex], coordIndex);
-            				mClusterAssignments[indices[i]] = i;
-            			    break;
-            case 1 : 		if (i==0){
-            					mProtoClusters[i] = new ProtoCluster(mCoordinates[coordIndex], coordIndex);
-            					mClusterAssignments[indices[i]] = i;
-            					}
-            				else {
-            					double maxDist = 0;
-            					int max = coordIndex;
-            					for (int j=0; j< coordCount; j++){
-            						if (ind.contains(j)) continue;
-            							for (int l=0; l<i; l++){
-            							double d = distance(mCoordinates[j],mProtoClusters[l].mCenter,this.xsize,this.ysize);
-            						if (d > maxDist) {
-            							maxDist= d;
-            							max = j;
-            						}
-                				mProtoClusters[i] = new ProtoCluster(mCoordinates[max], max);
-                				mClusterAssignments[max] = i;
-                				ind.add(max);
-            					}}
-            				}
-            case 2:			int l=0;
-            				while (!dictionary[l].equals(init_centers.get(i))) l++;
-            				mProtoClusters[i] = new ProtoCluster(mCoordinates[l], l);
-        					mClusterAssignments[indices[l]] = i;
-							break;
-           }
+            mProtoClusters[i] = new ProtoCluster(mCoordinates, mDim, seeds[i]);
+            mClusterAssignments[seeds[i]] = i;
+        }
+    }
+
+    /**
+     * Select the seeds by k-means++, each seed is drawn with probability
+     * proportional to the squared distance to the nearest seed already drawn.
+     * 
+     * @param random the random number generator
+     * @param first the first seed
+     * @return the indices of the seeds
+     */
+    private int[] seedPlusPlus(Random random, int first) {
+        int[] seeds = new int[mK];
+        double[] dist = new double[mCount];
+        Arrays.fill(dist, Double.MAX_VALUE);
+        seeds[0] = first;
+        updateSeeds(seeds, 0, 1, dist, null);
+        for (int i = 1; i < mK; i++) {
+            seeds[i] = draw(random, dist, null, mCount, first);
+            updateSeeds(seeds, i, i + 1, dist, null);
+        }
+        return seeds;
+    }
+
+    /**
+     * Select the seeds by k-means||.  A few rounds draw each coordinate with
+     * probability proportional to its squared distance to the nearest candidate,
+     * about 2k candidates per round, then k seeds are drawn among the candidates
+     * by k-means++ weighted by the number of coordinates nearest to each one.
+     * 
+     * @param random the random number generator
+     * @param first the first candidate
+     * @return the indices of the seeds
+     */
+    private int[] seedParallel(Random random, int first) {
+        double[] dist = new double[mCount];
+        int[] nearest = new int[mCount];
+        Arrays.fill(dist, Double.MAX_VALUE);
+        int[] candidates = new int[Math.max(16, 4 * mK)];
+        int count = 1;
+        candidates[0] = first;
+        updateSeeds(candidates, 0, 1, dist, nearest);
+        double over = 2.0 * mK;
+        for (int round = 0; round < SEED_ROUNDS; round++) {
+            double sum = 0;
+            for (int i = 0; i < mCount; i++) sum += dist[i];
+            if (sum == 0) break;
+            int from = count;
+            for (int i = 0; i < mCount; i++) {
+                if (dist[i] > 0 && random.nextDouble() * sum < over * dist[i]) {
+                    if (count == candidates.length) candidates = Arrays.copyOf(candidates, 2 * count);
+                    candidates[count++] = i;
+                }
+            }
+            updateSeeds(candidates, from, count, dist, nearest);
+        }
+
+        // Weight the candidates and draw the seeds among them.
+        double[] weight = new double[count];
+        for (int i = 0; i < mCount; i++) weight[nearest[i]]++;
+        double[] rows = new double[count * mDim];
+        for (int c = 0; c < count; c++) System.arraycopy(mCoordinates, candidates[c] * mDim, rows, c * mDim, mDim);
+        int[] picked = new int[Math.min(mK, count)];
+        double[] cdist = new double[count];
+        Arrays.fill(cdist, Double.MAX_VALUE);
+        picked[0] = draw(random, weight, null, count, 0);
+        updateRows(rows, picked[0], cdist);
+        for (int i = 1; i < picked.length; i++) {
+            picked[i] = draw(random, cdist, weight, count, picked[0]);
+            updateRows(rows, picked[i], cdist);
+        }
+
+        // With fewer candidates than clusters the other seeds are drawn as in k-means++.
+        int[] seeds = new int[mK];
+        for (int i = 0; i < picked.length; i++) seeds[i] = candidates[picked[i]];
+        if (picked.length < mK) {
+            Arrays.fill(dist, Double.MAX_VALUE);
+            updateSeeds(seeds, 0, picked.length, dist, null);
+            for (int i = picked.length; i < mK; i++) {
+                seeds[i] = draw(random, dist, null, mCount, first);
+                updateSeeds(seeds, i, i + 1, dist, null);
+            }
+        }
+        return seeds;
+    }
+
+    /**
+     * Draw an index with probability proportional to its weight.
+     * 
+     * @param random the random number generator
+     * @param dist the squared distances of the indices
+     * @param weight the weights multiplying the distances, null for none
+     * @param n the number of indices
+     * @param fallback the index returned when all the weights are zero
+     * @return the index drawn
+     */
+    private static int draw(Random random, double[] dist, double[] weight, int n, int fallback) {
+        double sum = 0;
+        for (int i = 0; i < n; i++) sum += weight == null ? dist[i] : dist[i] * weight[i];
+        if (sum <= 0) return fallback;
+        double r = random.nextDouble() * sum;
+        int last = fallback;
+        for (int i = 0; i < n; i++) {
+            double w = weight == null ? dist[i] : dist[i] * weight[i];
+            if (w <= 0) continue;
+            last = i;
+            r -= w;
+            if (r < 0) return i;
+        }
+        return last;
+    }
+
+    /**
+     * Lower the squared distance of each coordinate to its nearest seed with some new seeds.
+     * 
+     * @param seeds the indices of the seeds
+     * @param from the first new seed
+     * @param to the seed after the last new seed
+     * @param dist the squared distances to update
+     * @param nearest the nearest seed of each coordinate, null if not needed
+     */
+    private void updateSeeds(int[] seeds, int from, int to, double[] dist, int[] nearest) {
+        int grain = mPool == null ? mCount : Math.max(1024, mCount / (mPool.getParallelism() * 16));
+        SeedBlock block = new SeedBlock(seeds, from, to, dist, nearest, 0, mCount, grain);
+        if (mPool == null || grain >= mCount) block.compute();
+        else mPool.invoke(block);
+    }
+
+    /**
+     * Lower the squared distance of each candidate to its nearest seed with a new seed.
+     * 
+     * @param rows the flat array of the coordinates of the candidates
+     * @param seed the candidate that is a new seed
+     * @param dist the squared distances to update
+     */
+    private void updateRows(double[] rows, int seed, double[] dist) {
+        int n = dist.length;
+        for (int i = 0; i < n; i++) {
+            double d = mMetric.distance(rows, i * mDim, rows, seed * mDim, mDim);
+            d *= d;
+            if (d < dist[i]) dist[i] = d;
         }
     }
 
@@ -225,7 +478,7 @@ public class KMeans {
                     cluster.setUpdateFlag();
                     // If the update flag was set, update the center.
                     if (cluster.needsUpdate()) {
-                        cluster.updateCenter(mCoordinates);
+                        cluster.updateCenter(mCoordinates, mDim);
                     }
                 } else {
                     // When a cluster loses all of its members, it
@@ -246,10 +499,10 @@ public class KMeans {
      */
     private void computeDistances() {
         
-        int numCoords = mCoordinates.length;
+        int numCoords = mCount;
         int numClusters = mProtoClusters.length;
 
-        if (mDistanceCache == null) mDistanceCache = new double[numCoords][numClusters];
+        if (mDistanceCache == null) mDistanceCache = new double[numCoords * numClusters];
         
 
         for (int coord=0; coord < numCoords; coord++) {
@@ -258,8 +511,8 @@ public class KMeans {
             for (int clust=0; clust<numClusters; clust++) {
                 ProtoCluster cluster = mProtoClusters[clust];
                 if (cluster.getConsiderForAssignment() && cluster.needsUpdate()) {
-                    mDistanceCache[coord][clust] = 
-                        distance(mCoordinates[coord], cluster.getCenter(), this.xsize, this.ysize);
+                    mDistanceCache[coord * numClusters + clust] = 
+                        mMetric.distance(mCoordinates, coord * mDim, cluster.getCenter(), 0, mDim);
                 }
             }
         }
@@ -274,7 +527,7 @@ public class KMeans {
     private int makeAssignments() {
 
         int moves = 0;
-        int coordCount = mCoordinates.length;
+        int coordCount = mCount;
 
         // Checkpoint the clusters, so we'll be able to tell
         // which ones have changed after all the assignments have been
@@ -299,6 +552,119 @@ public class KMeans {
         return moves;
     }
 
+    /**
+     * Run the iterations of the accelerated mode.  The first assignment
+     * computes all the distances and sets the bounds, the following ones
+     * skip the coordinates whose bounds prove they keep their cluster.
+     */
+    private void computeBounded() {
+
+        int numClusters = mProtoClusters.length;
+        mUpper = new double[mCount];
+        mLower = new double[mCount];
+        double[] old = new double[numClusters * mDim];
+        double[] move = new double[numClusters];
+        double[] half = new double[numClusters];
+
+        checkPoints();
+        for (int i = 0; i < mCount; i++) {
+            int c = nearestBounded(i);
+            mProtoClusters[c].add(i);
+            mClusterAssignments[i] = c;
+        }
+
+        // Number of moves in the iteration and the iteration counter.
+        int moves = 0, it = 0;
+
+        do {
+            for (int c = 0; c < numClusters; c++) 
+                System.arraycopy(mProtoClusters[c].getCenter(), 0, old, c * mDim, mDim);
+            computeCenters();
+
+            // How far each center moved, the two largest moves, and half the
+            // distance from each center to the nearest other center.
+            double max1 = 0, max2 = 0;
+            int far = -1;
+            for (int c = 0; c < numClusters; c++) {
+                ProtoCluster cluster = mProtoClusters[c];
+                move[c] = 0;
+                if (cluster.getConsiderForAssignment() && cluster.needsUpdate()) 
+                    move[c] = mMetric.distance(old, c * mDim, cluster.getCenter(), 0, mDim);
+                if (move[c] > max1) {
+                    max2 = max1;
+                    max1 = move[c];
+                    far = c;
+                } else if (move[c] > max2) max2 = move[c];
+            }
+            for (int c = 0; c < numClusters; c++) {
+                if (!mProtoClusters[c].getConsiderForAssignment()) continue;
+                double min = Double.MAX_VALUE;
+                for (int o = 0; o < numClusters; o++) {
+                    if (o == c || !mProtoClusters[o].getConsiderForAssignment()) continue;
+                    double d = mMetric.distance(mProtoClusters[c].getCenter(), 0, mProtoClusters[o].getCenter(), 0, mDim);
+                    if (d < min) min = d;
+                }
+                half[c] = min / 2;
+            }
+
+            checkPoints();
+            moves = 0;
+            for (int i = 0; i < mCount; i++) {
+                int a = mClusterAssignments[i];
+                mUpper[i] += move[a];
+                mLower[i] -= (a == far) ? max2 : max1;
+                double bound = Math.max(half[a], mLower[i]);
+                int c = a;
+                if (!(mUpper[i] < bound)) {
+                    mUpper[i] = mMetric.distance(mCoordinates, i * mDim, mProtoClusters[a].getCenter(), 0, mDim);
+                    if (!(mUpper[i] < bound)) c = nearestBounded(i);
+                }
+                mProtoClusters[c].add(i);
+                if (c != a) {
+                    mClusterAssignments[i] = c;
+                    moves++;
+                }
+            }
+            it++;
+        } while (moves > 0 && it < mMaxIterations);
+    }
+
+    /**
+     * Checkpoint the clusters in contention.
+     */
+    private void checkPoints() {
+        int numClusters = mProtoClusters.length;
+        for (int c = 0; c < numClusters; c++) {
+            if (mProtoClusters[c].getConsiderForAssignment()) {
+                mProtoClusters[c].checkPoint();
+            }
+        }
+    }
+
+    /**
+     * Find the nearest cluster to the coordinate identified by the
+     * specified index computing the distances to all the centers,
+     * and set the bounds of the coordinate.
+     */
+    private int nearestBounded(int ndx) {
+        int nearest = -1;
+        double min = Double.MAX_VALUE, second = Double.MAX_VALUE;
+        int numClusters = mProtoClusters.length;
+        for (int c = 0; c < numClusters; c++) {
+            if (mProtoClusters[c].getConsiderForAssignment()) {
+                double d = mMetric.distance(mCoordinates, ndx * mDim, mProtoClusters[c].getCenter(), 0, mDim);
+                if (d < min) {
+                    second = min;
+                    min = d;
+                    nearest = c;
+                } else if (d < second) second = d;
+            }
+        }
+        mUpper[ndx] = min;
+        mLower[ndx] = second;
+        return nearest;
+    }
+
     /**
      * Find the nearest cluster to the coordinate identified by
      * the specified index.
@@ -307,9 +673,10 @@ public class KMeans {
         int nearest = -1;
         double min = Double.MAX_VALUE;
         int numClusters = mProtoClusters.length;
+        int row = ndx * numClusters;
         for (int c = 0; c < numClusters; c++) {
             if (mProtoClusters[c].getConsiderForAssignment()) {
-                double d = mDistanceCache[ndx][c];
+                double d = mDistanceCache[row + c];
                 if (d < min) {
                     min = d;
                     nearest = c;
@@ -319,17 +686,6 @@ public class KMeans {
         return nearest;
     }
  
-    /**
-     * Compute the euclidean distance between the two arguments.
-     */
-    private static double distance(double[] coord, double[] center, int xsize, int ysize) {
-    	double xdiff = Math.abs(center[0] - coord[0]);
-		xdiff = Math.min(xdiff, xsize-xdiff);
-		double ydiff = Math.abs(center[1] - coord[1]);
-		ydiff = Math.min(ydiff, ysize-ydiff);
-		return Math.sqrt(xdiff*xdiff + ydiff*ydiff);
-    }
-
     /**
      * Generate an array of Cluster objects from mProtoClusters.
      * 
@@ -353,7 +709,7 @@ public class KMeans {
             	Item[] list = new Item[members.length];
             	int i=0;
             	for (int k : members) {
-            		list[i]=items.get(dictionary[k]);
+            		list[i]=items.get(k);
             		i++;
             		}
                 Cluster cluster = new Cluster(list, pcluster.getCenter(), c);
@@ -375,6 +731,53 @@ public class KMeans {
         mProtoClusters = null;
         mDistanceCache = null;
         mClusterAssignments = null;
+        mUpper = null;
+        mLower = null;
+    }
+
+    /**
+     * A block of coordinates whose distances to new seeds are computed on the pool,
+     * split in halves until it is small enough.
+     */
+    private class SeedBlock extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private int[] seeds;
+        private int from, to;
+        private double[] dist;
+        private int[] nearest;
+        private int lo, hi, grain;
+
+        SeedBlock(int[] seeds, int from, int to, double[] dist, int[] nearest, int lo, int hi, int grain) {
+            this.seeds = seeds;
+            this.from = from;
+            this.to = to;
+            this.dist = dist;
+            this.nearest = nearest;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+        }
+
+        protected void compute() {
+            if (hi - lo <= grain) {
+                for (int i = lo; i < hi; i++) {
+                    for (int s = from; s < to; s++) {
+                        double d = mMetric.distance(mCoordinates, i * mDim, mCoordinates, seeds[s] * mDim, mDim);
+                        d *= d;
+                        if (d < dist[i]) {
+                            dist[i] = d;
+                            if (nearest != null) nearest[i] = s;
+                        }
+                    }
+                }
+            }
+            else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new SeedBlock(seeds, from, to, dist, nearest, lo, mid, grain),
+                        new SeedBlock(seeds, from, to, dist, nearest, mid, hi, grain));
+            }
+        }
     }
 
     /**
@@ -386,10 +789,11 @@ public class KMeans {
 
         // The previous iteration's cluster membership and
         // the current iteration's membership.  Compared to see if the
-        // cluster has changed during the last iteration.
+        // cluster has changed during the last iteration.  The two
+        // arrays are swapped at each checkpoint, so they are reused.
         private int[] mPreviousMembership;
         private int[] mCurrentMembership;
-        private int mCurrentSize;
+        private int mPreviousSize, mCurrentSize;
 
         // The cluster center.
         private double[] mCenter;
@@ -403,13 +807,16 @@ public class KMeans {
         /**
          * Constructor
          * 
-         * @param center  the initial cluster center.
-         * @param coordIndex  the initial member. 
+         * @param coordinates  the flat array of coordinates.
+         * @param dim  the number of coordinates of a member.
+         * @param coordIndex  the initial member, also the initial cluster center.
          */
-        ProtoCluster(double[] center, int coordIndex) {
-            mCenter = (double[]) center.clone();
+        ProtoCluster(double[] coordinates, int dim, int coordIndex) {
+            mCenter = new double[dim];
+            System.arraycopy(coordinates, coordIndex * dim, mCenter, 0, dim);
             // No previous membership.
-            mPreviousMembership = new int[0];
+            mPreviousMembership = new int[10];
+            mPreviousSize = 0;
             // Provide space for 10 members to be added initially.
             mCurrentMembership = new int[10];
             mCurrentSize = 0;
@@ -422,8 +829,7 @@ public class KMeans {
          * @return an array of coordinate indices.
          */
         int[] getMembership() {
-            trimCurrentMembership();
-            return mCurrentMembership;
+            return Arrays.copyOf(mCurrentMembership, mCurrentSize);
         }
         
         /**
@@ -435,18 +841,6 @@ public class KMeans {
             return mCenter;
         }
         
-        /**
-         * Reduces the length of the array of current members to
-         * the number of members.
-         */
-        void trimCurrentMembership() {
-            if (mCurrentMembership.length > mCurrentSize) {
-                int[] temp = new int[mCurrentSize];
-                System.arraycopy(mCurrentMembership, 0, temp, 0, mCurrentSize);
-                mCurrentMembership = temp;
-            }
-        }
-
         /**
          * Add a coordinate to the protocluster.
          * 
@@ -480,11 +874,8 @@ public class KMeans {
          * changed in the previous call to makeAssignments().
          */
         void setUpdateFlag() {
-            // Trim the current membership array length down to the
-            // number of members.
-            trimCurrentMembership();
             mUpdateFlag = false;
-            if (mPreviousMembership.length == mCurrentSize) {
+            if (mPreviousSize == mCurrentSize) {
                 for (int i=0; i<mCurrentSize; i++) {
                     if (mPreviousMembership[i] != mCurrentMembership[i]) {
                         mUpdateFlag = true;
@@ -498,11 +889,14 @@ public class KMeans {
 
         /**
          * Clears the current membership after copying it to the
-         * previous membership.
+         * previous membership, the array of the previous membership
+         * holds the new current membership.
          */
         void checkPoint() {
+            int[] temp = mPreviousMembership;
             mPreviousMembership = mCurrentMembership;
-            mCurrentMembership = new int[10];
+            mPreviousSize = mCurrentSize;
+            mCurrentMembership = temp;
             mCurrentSize = 0;
         }
 
@@ -539,15 +933,16 @@ public class KMeans {
         /**
          * Update the cluster center.
          * 
-         * @param coordinates the array of coordinates.
+         * @param coordinates the flat array of coordinates.
+         * @param dim the number of coordinates of a member.
          */
-        void updateCenter(double[][] coordinates) {
+        void updateCenter(double[] coordinates, int dim) {
             Arrays.fill(mCenter, 0.0);
             if (mCurrentSize > 0) {
                 for (int i=0; i<mCurrentSize; i++) {
-                    double[] coord = coordinates[mCurrentMembership[i]];
-                    for (int j=0; j<coord.length; j++) {
-                        mCenter[j] += coord[j];
+                    int coord = mCurrentMembership[i] * dim;
+                    for (int j=0; j<dim; j++) {
+                        mCenter[j] += coordinates[coord + j];
                     }
                 }
                 for (int i=0; i<mCenter.length; i++) {
@@ -0,0 +1,237 @@
+package antcolony;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class provides the distances between items on demand, instead of computing all the pairs
+ * before the running of the clustering.
+ * <p>
+ * The computed distances are kept in a bounded cache with the <b>cache size</b> of the configuration.
+ * When the cache is full the least recently used pair is replaced. The cache is an open addressing
+ * hash table of primitive keys, one long per pair, with the recency list kept in int arrays,
+ * so a lookup does not allocate.
+ * <p>
+ * When the ants are stepped in parallel the cache is split in segments by the hash of the pairs,
+ * each segment with its own lock, table and recency list, and a missing distance is computed outside
+ * the lock, so the threads rarely wait for each other. With one thread there is a single segment.
+ * <p>
+ * The scale factor is the mean distance of all the pairs when they fit in the cache, otherwise
+ * it is estimated from a fixed sample of pairs.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.1
+ * @since       1.0
+ * */
+public class LazyDistanceMatrix implements DistanceProvider {
+
+	private static final int SAMPLE = 100000;	// number of pairs used to estimate the scale factor
+
+	private ItemStore items;
+	private int n;
+	private double scaleFactor;
+
+	private Segment[] segments;			// parts of the cache, selected by the high bits of the hash
+	private int shift;					// bits of the hash that select the segment
+
+	/**
+	 * Constructor
+	 * @param data the dataset to be used
+	 * @param conf the configuration of the simulation
+	 * */
+	public LazyDistanceMatrix(Data data, Configuration conf) {
+		this.items = data.getItems();
+		this.n = items.size();
+		int capacity = conf.getCacheSize();
+		int count = 1;
+		if (conf.getThreads() > 1) while (count < 4 * conf.getThreads() && count < capacity) count <<= 1;
+		this.segments = new Segment[count];
+		for (int k = 0; k < count; k++) this.segments[k] = new Segment((capacity + count - 1) / count);
+		this.shift = 64 - Integer.numberOfTrailingZeros(count);
+		this.scaleFactor = computeScaleFactor(capacity);
+	}
+
+	/**
+	 * Get the scale factor used in the calculations
+	 * @return scale factor
+	 * */
+	public double getScaleFactor() {
+		return this.scaleFactor;
+	}
+
+	/**
+	 * Return the distance between two items, computing it if it is not in the cache
+	 * @param i the index of one of the items
+	 * @param j the index of the other item
+	 * @return value between two items
+	 * */
+	public double get(int i, int j) {
+		if (i == j) return 0;
+		if (i > j) {
+			int t = i;
+			i = j;
+			j = t;
+		}
+		long key = (long)i * n + j;
+		long h = key * 0x9E3779B97F4A7C15L;
+		Segment seg = segments.length == 1 ? segments[0] : segments[(int)(h >>> shift)];
+		int slot = (int)(h ^ (h >>> 32));
+		double d = seg.get(key, slot);
+		if (!Double.isNaN(d)) return d;
+		d = items.distance(i, j);
+		seg.put(key, slot, d);
+		return d;
+	}
+
+	/**
+	 * Compute the mean distance between items, from all the pairs if
+	 * they fit in the cache or from a sample of pairs otherwise
+	 * @param capacity the size of the cache
+	 * @return the mean distance
+	 * */
+	private double computeScaleFactor(int capacity) {
+		double pairs = (double)n * (double)(n - 1) / 2;
+		if (pairs <= 0) return 0;
+		double sum = 0;
+		if (pairs <= capacity) {
+			for (int i = 0; i < n; i++)
+				for (int j = i + 1; j < n; j++) sum += get(i, j);
+			return sum / pairs;
+		}
+		Random random = new Random(n);
+		for (int s = 0; s < SAMPLE; s++) {
+			int i = random.nextInt(n);
+			int j = random.nextInt(n - 1);
+			if (j >= i) j++;
+			sum += items.distance(i, j);
+		}
+		return sum / SAMPLE;
+	}
+
+	/**
+	 * A part of the cache, a table of pairs with its recency list guarded by the lock of the segment
+	 * */
+	private static class Segment {
+
+		private long[] keys;				// key of the pair in each entry
+		private double[] values;			// distance of the pair in each entry
+		private int[] prev, next;			// recency list, from head (most recent) to tail
+		private int head, tail;
+		private int count;					// number of entries used
+		private int[] slots;				// hash table of entries, -1 if empty
+		private int mask;
+
+		Segment(int capacity) {
+			this.keys = new long[capacity];
+			this.values = new double[capacity];
+			this.prev = new int[capacity];
+			this.next = new int[capacity];
+			this.head = -1;
+			this.tail = -1;
+			this.count = 0;
+			int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 2;
+			this.slots = new int[size];
+			Arrays.fill(this.slots, -1);
+			this.mask = size - 1;
+		}
+
+		/** Find the distance of a pair and make it the most recent
+		 * @return the distance, NaN if the pair is not in the segment
+		 * */
+		synchronized double get(long key, int hash) {
+			int e = find(key, hash);
+			if (e == -1) return Double.NaN;
+			if (e != head) {
+				unlink(e);
+				linkFirst(e);
+			}
+			return values[e];
+		}
+
+		/** Put the distance of a pair, replacing the least recently used pair when the segment is full
+		 * */
+		synchronized void put(long key, int hash, double d) {
+			if (find(key, hash) != -1) return;
+			int e;
+			if (count < keys.length) e = count++;
+			else {
+				e = tail;
+				unlink(e);
+				remove(keys[e]);
+			}
+			keys[e] = key;
+			values[e] = d;
+			linkFirst(e);
+			insert(hash, e);
+		}
+
+		/**** recency list *****************************************************************/
+
+		/** Remove an entry from the recency list
+		 * */
+		private void unlink(int e) {
+			int p = prev[e], q = next[e];
+			if (p == -1) head = q; else next[p] = q;
+			if (q == -1) tail = p; else prev[q] = p;
+		}
+
+		/** Put an entry at the head of the recency list
+		 * */
+		private void linkFirst(int e) {
+			prev[e] = -1;
+			next[e] = head;
+			if (head != -1) prev[head] = e;
+			head = e;
+			if (tail == -1) tail = e;
+		}
+
+		/**** hash table *****************************************************************/
+
+		/** The first slot of the probe sequence of a key
+		 * */
+		private int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int)(h ^ (h >>> 32)) & mask;
+		}
+
+		/** Find the entry of a key
+		 * @return the entry, -1 if the key is not in the table
+		 * */
+		private int find(long key, int hash) {
+			int s = hash & mask;
+			while (slots[s] != -1) {
+				if (keys[slots[s]] == key) return slots[s];
+				s = (s + 1) & mask;
+			}
+			return -1;
+		}
+
+		/** Put the entry of a key in the table
+		 * */
+		private void insert(int hash, int e) {
+			int s = hash & mask;
+			while (slots[s] != -1) s = (s + 1) & mask;
+			slots[s] = e;
+		}
+
+		/** Remove a key from the table shifting back the entries of its probe sequence
+		 * */
+		private void remove(long key) {
+			int s = hash(key);
+			while (keys[slots[s]] != key) s = (s + 1) & mask;
+			int j = s;
+			while (true) {
+				j = (j + 1) & mask;
+				if (slots[j] == -1) break;
+				int k = hash(keys[slots[j]]);
+				boolean stay = (s <= j) ? (s < k && k <= j) : (s < k || k <= j);
+				if (stay) continue;
+				slots[s] = slots[j];
+				s = j;
+			}
+			slots[s] = -1;
+		}
+
+	}
+
+}
@@ -0,0 +1,255 @@
+package antcolony;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class stores the distances between items in a file that is mapped in memory,
+ * so the matrix of a dataset is computed once and reused by the following runs.
+ * <p>
+ * The file is kept in the <b>cache directory</b> of the configuration, and its name is a hash of
+ * the data of the items, of the distance measure and of the precision of the values. A run on the same
+ * dataset finds the file and maps it read-only, without computing or copying the distances.
+ * <p>
+ * The file holds a header with the scale factor followed by the upper triangle of the matrix,
+ * row-major and without the diagonal, in double or single precision. Files larger than the
+ * maximum size of a mapping are mapped in several segments.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class MappedDistanceMatrix implements DistanceProvider {
+
+	private static final long MAGIC = 0x414e54444953544dL;	// "ANTDISTM"
+	private static final int HEADER = 64;						// bytes before the values
+	private static final int SHIFT = 30;						// segments of 1 GB
+	private static final long SEGMENT = 1L << SHIFT;
+	private static final long BLOCK = 1L << 26;				// bytes computed at once while building
+
+	private int n;
+	private boolean single;				// single precision values
+	private int width;					// bytes per value
+	private double scaleFactor;
+	private MappedByteBuffer[] segments;
+	private File file;
+
+	/**
+	 * Constructor, maps the file of the dataset or builds it if it does not exist.
+	 * @param data the dataset to be used
+	 * @param conf the configuration of the simulation
+	 * @throws IOException if the file can not be built or mapped
+	 * */
+	public MappedDistanceMatrix(Data data, Configuration conf) throws IOException {
+		ItemStore items = data.getItems();
+		this.n = items.size();
+		this.single = conf.getDMFloat();
+		this.width = single ? 4 : 8;
+		File dir = new File(conf.getCacheDir());
+		if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Could not create " + dir);
+		this.file = new File(dir, "dm-" + key(items, conf) + ".bin");
+		if (!this.file.exists() || !readHeader()) build(items, conf);
+		map();
+	}
+
+	/**
+	 * Get the scale factor used in the calculations
+	 * @return scale factor used in the computation of the matrix
+	 * */
+	public double getScaleFactor() {
+		return this.scaleFactor;
+	}
+
+	/**
+	 * Return one value of the Matrix
+	 * @return value between two items
+	 * @param i the index of one of the items
+	 * @param j the index of the other item
+	 * */
+	public double get(int i, int j) {
+		if (i == j) return 0;
+		if (i > j) {
+			int t = i;
+			i = j;
+			j = t;
+		}
+		long pos = (offset(i) + (j - i - 1)) * width;
+		MappedByteBuffer b = segments[(int)(pos >>> SHIFT)];
+		int p = (int)(pos & (SEGMENT - 1));
+		if (single) return b.getFloat(p);
+		else return b.getDouble(p);
+	}
+
+	/**
+	 * Get the file where the matrix is stored
+	 * @return the file
+	 * */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Number of values before the row of an item
+	 * @param i the index of the item
+	 * @return the number of values
+	 * */
+	private long offset(int i) {
+		return (long)i * (2L * n - i - 1) / 2;
+	}
+
+	/**
+	 * Compute the hash that identifies the file of a dataset
+	 * @param items the items of the dataset
+	 * @param conf the configuration of the simulation
+	 * @return hexadecimal hash
+	 * */
+	private String key(ItemStore items, Configuration conf) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			int nkeys = items.getnkeys();
+			ByteBuffer b = ByteBuffer.allocate(8 * Math.max(4, nkeys));
+			b.putInt(n).putInt(nkeys).putInt(conf.getDMeasure()).putInt(width);
+			md.update(b.array(), 0, b.position());
+			double[] f = items.getFeatures();
+			for (int i = 0; i < n; i++) {
+				b.clear();
+				for (int k = 0; k < nkeys; k++) b.putDouble(f[i * nkeys + k]);
+				md.update(b.array(), 0, b.position());
+			}
+			StringBuilder r = new StringBuilder();
+			for (byte x : md.digest()) r.append(String.format("%02x", x));
+			return r.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Read the header of the existing file
+	 * @return true if the file holds a complete matrix of this dataset
+	 * */
+	private boolean readHeader() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+		try {
+			if (raf.length() != HEADER + offset(n) * width) return false;
+			if (raf.readLong() != MAGIC || raf.readInt() != n || raf.readInt() != width) return false;
+			this.scaleFactor = raf.readDouble();
+			return true;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Compute the matrix and write it to a temporary file that replaces the file when complete.
+	 * The rows are computed in blocks on the pool of the configuration and their sums
+	 * are added in order, as in {@link DistanceMatrix}.
+	 * */
+	private void build(ItemStore items, Configuration conf) throws IOException {
+		File tmp = new File(this.file.getPath() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		try {
+			FileChannel ch = raf.getChannel();
+			raf.setLength(HEADER + offset(n) * width);
+			double[] sums = new double[n];
+			int lo = 0;
+			while (lo < n) {
+				int hi = lo;
+				while (hi < n && (hi == lo || (offset(hi + 1) - offset(lo)) * width <= BLOCK)) hi++;
+				ByteBuffer b = ByteBuffer.allocate((int)((offset(hi) - offset(lo)) * width));
+				int grain = conf.getThreads() > 1 ? Math.max(1, (hi - lo) / (conf.getThreads() * 16)) : hi - lo;
+				RowBlock block = new RowBlock(items, b, sums, lo, lo, hi, grain);
+				if (conf.getThreads() > 1) conf.getPool().invoke(block);
+				else block.compute();
+				long pos = HEADER + offset(lo) * width;
+				while (b.hasRemaining()) pos += ch.write(b, pos);
+				lo = hi;
+			}
+			double sum = 0;
+			for (int i = 0; i < n; i++) sum += sums[i];
+			this.scaleFactor = 2 * sum / ((double)n * (double)(n - 1));
+			ByteBuffer h = ByteBuffer.allocate(HEADER);
+			h.putLong(MAGIC).putInt(n).putInt(width).putDouble(this.scaleFactor);
+			h.clear();
+			ch.write(h, 0);
+			ch.force(true);
+		} finally {
+			raf.close();
+		}
+		Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Map the values of the file read-only in segments
+	 * */
+	private void map() throws IOException {
+		long size = offset(n) * width;
+		int count = (int)((size + SEGMENT - 1) >>> SHIFT);
+		this.segments = new MappedByteBuffer[Math.max(1, count)];
+		RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			for (int s = 0; s < this.segments.length; s++) {
+				long start = (long)s << SHIFT;
+				long len = Math.min(SEGMENT, size - start);
+				this.segments[s] = ch.map(FileChannel.MapMode.READ_ONLY, HEADER + start, Math.max(0, len));
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * A block of rows of the matrix written to a buffer, split in halves until it is small enough
+	 * */
+	private class RowBlock extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private ItemStore items;
+		private ByteBuffer buffer;
+		private double[] sums;
+		private int first, lo, hi, grain;
+
+		RowBlock(ItemStore items, ByteBuffer buffer, double[] sums, int first, int lo, int hi, int grain) {
+			this.items = items;
+			this.buffer = buffer;
+			this.sums = sums;
+			this.first = first;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+
+		protected void compute() {
+			if (hi - lo <= grain) {
+				for (int i = lo; i < hi; i++) {
+					int p = (int)((offset(i) - offset(first)) * width);
+					double sum = 0;
+					for (int j = i + 1; j < n; j++) {
+						double d = items.distance(i, j);
+						if (single) buffer.putFloat(p, (float)d);
+						else buffer.putDouble(p, d);
+						p += width;
+						sum += d;
+					}
+					sums[i] = sum;
+				}
+			}
+			else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new RowBlock(items, buffer, sums, first, lo, mid, grain),
+						new RowBlock(items, buffer, sums, first, mid, hi, grain));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+package antcolony;
+
+import java.util.Arrays;
+
+/** This class is a priority queue of pairs of indices ordered by a distance, the pair with
+ * the smallest distance first.
+ * <p>
+ * The queue is a binary heap kept in primitive arrays, so adding a pair does not allocate
+ * and pairs with the same distance are all kept. Pairs with the same distance are
+ * ordered by their first and then by their second index.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class PairQueue {
+
+	private double[] keys;				// distance of each pair
+	private int[] first, second;		// indices of each pair
+	private int size;					// number of pairs in the queue
+
+/*********** Constructor ****************************************************************************/
+
+	/** Constructor of an empty queue
+	 * @param capacity the initial number of pairs
+	 * */
+	public PairQueue(int capacity) {
+		capacity = Math.max(1, capacity);
+		this.keys = new double[capacity];
+		this.first = new int[capacity];
+		this.second = new int[capacity];
+		this.size = 0;
+	}
+
+/*********** Access & Modification Functions ****************************************************************************/
+
+	/** Add a pair to the queue
+	 * @param d the distance of the pair
+	 * @param i the first index
+	 * @param j the second index
+	 * */
+	public void add(double d, int i, int j) {
+		if (this.size == this.keys.length) {
+			int capacity = this.size + (this.size >> 1) + 1;
+			this.keys = Arrays.copyOf(this.keys, capacity);
+			this.first = Arrays.copyOf(this.first, capacity);
+			this.second = Arrays.copyOf(this.second, capacity);
+		}
+		int c = this.size++;
+		while (c > 0) {
+			int p = (c - 1) >>> 1;
+			if (!less(d, i, j, p)) break;
+			move(p, c);
+			c = p;
+		}
+		set(c, d, i, j);
+	}
+
+	/** Remove the pair with the smallest distance
+	 * */
+	public void remove() {
+		if (this.size == 0) return;
+		int last = --this.size;
+		if (last == 0) return;
+		double d = this.keys[last];
+		int i = this.first[last], j = this.second[last];
+		int c = 0;
+		while (true) {
+			int l = 2 * c + 1;
+			if (l >= last) break;
+			int r = l + 1;
+			int m = (r < last && less(this.keys[r], this.first[r], this.second[r], l)) ? r : l;
+			if (!less(this.keys[m], this.first[m], this.second[m], d, i, j)) break;
+			move(m, c);
+			c = m;
+		}
+		set(c, d, i, j);
+	}
+
+	/** Check if the queue is empty
+	 * @return true if the queue has no pairs
+	 * */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/** Get the number of pairs in the queue
+	 * @return the number of pairs
+	 * */
+	public int size() {
+		return this.size;
+	}
+
+	/** Get the distance of the first pair
+	 * @return the distance
+	 * */
+	public double getKey() {
+		return this.keys[0];
+	}
+
+	/** Get the first index of the first pair
+	 * @return the index
+	 * */
+	public int getFirst() {
+		return this.first[0];
+	}
+
+	/** Get the second index of the first pair
+	 * @return the index
+	 * */
+	public int getSecond() {
+		return this.second[0];
+	}
+
+	/** Compare a pair with the pair at a position of the heap
+	 * */
+	private boolean less(double d, int i, int j, int p) {
+		return less(d, i, j, this.keys[p], this.first[p], this.second[p]);
+	}
+
+	/** Compare two pairs by distance, then by first and second index
+	 * */
+	private static boolean less(double d, int i, int j, double e, int k, int l) {
+		if (d != e) return d < e;
+		if (i != k) return i < k;
+		return j < l;
+	}
+
+	/** Move a pair to another position of the heap
+	 * */
+	private void move(int from, int to) {
+		set(to, this.keys[from], this.first[from], this.second[from]);
+	}
+
+	/** Store a pair at a position of the heap
+	 * */
+	private void set(int p, double d, int i, int j) {
+		this.keys[p] = d;
+		this.first[p] = i;
+		this.second[p] = j;
+	}
+
+}
@@ -24,16 +24,12 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 import javax.swing.JPanel;
-import java.util.Iterator;
 
 
 /** Wrapping class for the main functions in the application. This class contains the main components
@@ -56,6 +52,7 @@ public class Simulation extends JPanel implements Runnable  {
 	private Clustering clustering;
 	private Data data;
 	private Grid grid;
+	private Evaluation evaluation;
 	private int[] colors;
 	private boolean  original = true;
 	private boolean  clusters = false;
@@ -78,12 +75,14 @@ public class Simulation extends JPanel implements Runnable  {
 	public Simulation(Configuration conf, Clustering clt) {
 		
 		this.conf = conf;
+		conf.resetRandom();
 		this.data = new Data(conf);
 		this.grid = new Grid(conf,this.data);
 		this.colors = conf.getColors();
 		this.scale = 4.0;
 		this.original = true;
 		this.antColony = new AntColony(conf, grid);
+		this.evaluation = new Evaluation(conf, this.grid);
 		this.clustering = clt;
 		this.record = new double[5][10000];
 		this.rec = false;
@@ -95,9 +94,11 @@ public class Simulation extends JPanel implements Runnable  {
 	*/
 	public void update(Configuration conf) {	
 		this.conf = conf;
+		conf.resetRandom();
 		this.data = new Data(conf);
 		this.grid = new Grid(conf,this.data);
 		this.antColony = new AntColony(conf, grid);
+		this.evaluation = new Evaluation(conf, this.grid);
 		this.clustering.setText(this.grid.printStats());
 	}
 
@@ -186,17 +187,20 @@ public class Simulation extends JPanel implements Runnable  {
             	this.repaint();
             	if (this.tick%100==0 && this.tick > 0) {
             		this.antColony.drop();
-                	pearson = computePearson(true);
+            		this.grid.calculateClusters();
+                	double[] values = this.evaluation.evaluate();
+                	String stats = this.grid.printStats();
+                	for (int i = 5; i < values.length; i++) stats += this.evaluation.getStage(i).getName() + ": " + values[i] + "\n";
+                	this.clustering.setText(stats);
+                	pearson = values[0];
                 	this.clustering.setPearsons(pearson);
-                	entropy = computeEntropy(true);
+                	entropy = values[1];
                 	this.clustering.setEntropy(entropy);
-            		this.grid.calculateClusters();
-                	this.clustering.setText(this.grid.printStats());
-            		F_m = computeFMeasure();
+            		F_m = values[2];
             		this.clustering.setF(F_m);
-            		rand = computeRand();
+            		rand = values[3];
             		this.clustering.setRand(rand);
-            		InnVar = computeInnerClusterVariance();
+            		InnVar = values[4];
             		this.clustering.setInnerCV(InnVar);
                 	if (this.rec && tick < 10000){
                 		this.record[0][tick]=pearson;
@@ -243,8 +247,8 @@ public class Simulation extends JPanel implements Runnable  {
 	*/
 	  public void paint(Graphics g){
 	      super.paint(g);
-	          HashMap<UUID,Item> items = this.grid.getItems();
-	          for (Item it : items.values()){
+	          ItemStore items = this.grid.getItems();
+	          for (Item it : items){
 	    			  if (this.original){
 	    				  g.setColor(new Color(colors[it.getColor()]));
 	    				  g.fillRect((int)(it.getinitX()*this.scale), (int)(it.getinitY()*this.scale),5,5);
@@ -310,38 +314,13 @@ public class Simulation extends JPanel implements Runnable  {
 /************ Measurements ******************************************************/
 
 
-	/** Compute Pearson correlation
+	/** Compute Pearson correlation, over all the pairs of items or estimated from a sample of pairs
+	* according to the configuration, see {@link Correlation}
 	* @return Pearson correlation computed for the entire grid
 	* @param ignore the positions of items that are currently picked up
 	*/
 	public double computePearson(boolean ignore) {
-		double xsum = 0;
-		double ysum = 0;
-		double xysum = 0;
-		double xsquaresum = 0;
-		double ysquaresum = 0;
-		double N = 0;
-		HashMap<UUID,Item> items = this.grid.getItems();
-		DistanceMatrix d = this.grid.getDistanceMatrix();	
-		for (UUID key : items.keySet()) {
-			if (ignore && items.get(key).isPicked()) continue;
-			for (UUID key1 : items.keySet())  {
-				if (ignore && items.get(key1).isPicked()) continue;
-				if (key.equals(key1)) continue;
-				N++;
-				double x = Math.abs(d.get(key, key1));
-				double y = Math.abs(items.get(key).distance(items.get(key1), 1));
-				xsum += x;
-				xsquaresum += (x*x);
-				ysum += y;
-				ysquaresum += (y*y);
-				xysum += (x*y);
-			}
-		}
-		double num = xysum - xsum*ysum/N;
-		double denom = Math.sqrt((xsquaresum - xsum*xsum/N)*(ysquaresum-ysum*ysum/N));
-		if (denom == 0) return 0;
-		return num / denom ;
+		return this.evaluation.getCorrelation().compute(ignore);
 	}
 	
 	/** Compute Entropy
@@ -349,154 +328,42 @@ public class Simulation extends JPanel implements Runnable  {
 	* @return Entropy computed for the entire grid
 	*/
 	public double computeEntropy(boolean ignore) {
-		int xdim = (int)Math.floor(conf.getxsize()/10);
-		int ydim = (int)Math.floor(conf.getysize()/10);
-		double[][] bins = new double[xdim][ydim];
-		HashMap<UUID,Item> items = this.grid.getItems();
-		double count = 0;
-		for (UUID key : items.keySet()) {
-			if (ignore && items.get(key).isPicked()) continue;
-			bins[(int)Math.floor(items.get(key).getX()/10)][(int)Math.floor(items.get(key).getY()/10)]++;
-			count++;
-		}
-		double sum = 0;
-		double log2 = Math.log(2);
-		for (int i=0; i < xdim; i++) {
-			for (int j=0; j < ydim; j++) {
-				double p = bins[i][j]/count;
-				if (p > 0) sum += p * Math.log(p)/log2;
-			}}
-		return -sum;
+		return this.evaluation.computeEntropy(ignore);
 	}
 
 	/** Compute F Measure
 	* @return F measure computed for the entire grid
 	*/
 	public double computeFMeasure(){
-		Cluster[] p = this.grid.getClusters();
-		HashMap<UUID,Item> items = this.grid.getItems();
-		String[] types = this.conf.getTypes();
-		double[] count_i = new double[types.length];
-		for (UUID key : items.keySet()) 
-			for (int i=0; i<types.length;i++)
-				if (items.get(key).getType().equals(types[i])) count_i[i]++;
-		double[][] prec = new double[types.length][p.length];
-		double[][] recl = new double[types.length][p.length];
-		double[][] F = new double[types.length][p.length];
-		double[] F_max = new double[types.length];
-		for (int j=0; j< p.length;j++){
-			if (p[j]!= null){
-				double[] count_j = new double[types.length];
-				LinkedList<Item> list = p[j].getItems();
-				Iterator<Item> it = list.iterator();
-				double sum = 0;
-				while(it.hasNext()){
-					Item itm = it.next();
-					for(int i=0; i<types.length;i++) if (itm.getType().equals(types[i])) count_j[i]++;
-					sum++;
-					}
-				for (int i=0;i<types.length;i++){
-					prec[i][j]= count_j[i] / sum;
-					recl[i][j]= count_j[i] / count_i[i];
-				}
-			}
-			}
-		for (int j=0; j< p.length;j++){
-			for (int i=0;i<types.length;i++)
-				if (p[j]!= null) 
-					F[i][j]= 2* prec[i][j] * recl[i][j] / (prec[i][j] + recl[i][j]);
-		}
-		for (int i=0;i<types.length;i++){
-			F_max[i]=0;
-			for (int j=0; j< p.length;j++)if (F[i][j] > F_max[i]) F_max[i]=F[i][j];
-		}
-		double F_measure = 0;
-			for (int i=0;i<types.length;i++)
-				F_measure += count_i[i] / items.size() * F_max[i];	
-		return F_measure;
+		return this.evaluation.getContingency().getFMeasure();
 	}
 	
 	/** Compute Rand Index
 	* @return Rand index computed for the entire grid
 	*/
 	public double computeRand() {
-		Cluster[] p = this.grid.getClusters();
-		HashMap<UUID,Integer> part = new HashMap<UUID,Integer>();
-		HashMap<UUID,Integer> clust = new HashMap<UUID,Integer>();
-		for (int i=0; i< p.length; i++)
-			if (p[i]!= null){
-				LinkedList<Item> items = p[i].getItems();
-				Iterator<Item> it = items.iterator();
-				while(it.hasNext()) part.put(it.next().getID(),i+1);
-			}
-
-		HashMap<UUID,Item> items = this.grid.getItems();
-		String[] types = this.conf.getTypes();
-		for (UUID key : items.keySet())
-			for (int i=0; i< this.conf.getTypes().length; i++)
-				if (items.get(key).getType().equals(types[i])) clust.put(key,i+1);
-		
-		int a=0;
-		int b=0;
-		int c=0;
-		int d=0;
-		for (UUID key : items.keySet()){
-			for (UUID key1 : items.keySet()){
-					if (key == key1) continue;
-					if (clust.get(key)==clust.get(key1) && part.get(key)==part.get(key1)) a++;
-					if (clust.get(key)==clust.get(key1) && part.get(key)!=part.get(key1)) b++;
-					if (clust.get(key)!=clust.get(key1) && part.get(key)==part.get(key1)) c++;
-					if (clust.get(key)!=clust.get(key1) && part.get(key)!=part.get(key1)) d++;
-				}}
-		return ((double)(a+d))/((double) (a+b+c+d));
+		return this.evaluation.getContingency().getRand();
+	}
+	
+	/** Compute Adjusted Rand Index
+	* @return adjusted Rand index computed for the entire grid
+	*/
+	public double computeAdjustedRand() {
+		return this.evaluation.getContingency().getAdjustedRand();
 	}
 	
 	/** Compute Inner Cluster Variance
 	* @return ICV computed for the entire grid
 	*/
 	public double computeInnerClusterVariance() {
-		Cluster[] p = this.grid.getClusters();
-		Double[][] centers = new Double[p.length][conf.getnkeys()];
-		double[][] centers_xy = new double[p.length][2];
-		Item[] centroids = new Item[p.length];
-		for (int i=0; i< p.length; i++)
-			if (p[i]!= null){
-				LinkedList<Item> items = p[i].getItems();
-				Iterator<Item> it = items.iterator();
-				while (it.hasNext()){
-					Item itm = it.next();
-					List<Double> list = itm.getData();
-					Iterator<Double> it1 = list.iterator();
-					centers_xy[i][0]+=(double)itm.getX();
-					centers_xy[i][1]+=(double)itm.getY();
-					for (int j=0; j<conf.getnkeys(); j++)centers[i][j]=0.0;
-					int j=0;
-					while (it1.hasNext()){
-						centers[i][j] += it1.next();
-						j++;
-					}
-				}
-				for (int j=0; j<conf.getnkeys();j++) centers[i][j]= centers[i][j]/(double)items.size();
-				centers_xy[i][0]= centers_xy[i][0]/(double)items.size();
-				centers_xy[i][1]= centers_xy[i][1]/(double)items.size();
-			}
-		for (int i=0; i< p.length; i++) 
-			if (p[i]!= null) {
-				Double[] c = centers[i];
-				centroids[i]= new Item(UUID.randomUUID(), this.conf,(int)centers_xy[i][0],(int)centers_xy[i][1],"",0, Arrays.asList(c));
-			}
-		double sum = 0;
-		double inc = 0.0;
-		for (int i=0; i< p.length; i++)
-			if (p[i]!= null){
-				LinkedList<Item> items = p[i].getItems();
-				Iterator<Item> it = items.iterator();
-				while (it.hasNext()){
-					sum+= it.next().distance(centroids[i], 2);
-					inc++;
-				}
-			}
-		return sum/inc;
+		return this.evaluation.computeInnerClusterVariance();
+	}
+	
+	/** Compute the adjusted Rand index against a K-Means clustering of the data space
+	* @return adjusted Rand index computed for the entire grid
+	*/
+	public double computeFeatureRand() {
+		return this.evaluation.computeFeatureRand();
 	}
 
 }
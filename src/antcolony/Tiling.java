@@ -0,0 +1,121 @@
+package antcolony;
+
+/** This class splits the toroidal grid in rectangular tiles for the tiled schedule of the colony.
+ * <p>
+ * The number of tiles along each side is even, or one, so the tiles can be coloured as a checkerboard
+ * of four colours in which two tiles of the same colour are never neighbours, even across the border
+ * of the grid. The tiles of one colour are then stepped at the same time.
+ * <p>
+ * Each side of a tile is at least the given size, which should be larger than the neighbourhood
+ * read by the ants, so the cells read around a tile are never written by another tile of its colour.
+ * The tiles then need no copy of the borders of their neighbours.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class Tiling {
+
+	private int xsize, ysize;			// size of the grid
+	private int tx, ty;					// number of tiles along each side
+	private int[] xs, ys;				// first coordinate of each column and row of tiles, and the size
+
+/*********** Constructor ****************************************************************************/
+
+	/** Constructor
+	 * @param xsize the width of the grid
+	 * @param ysize the height of the grid
+	 * @param size the minimum side of a tile
+	 * */
+	public Tiling(int xsize, int ysize, int size) {
+		this.xsize = xsize;
+		this.ysize = ysize;
+		this.tx = count(xsize, size);
+		this.ty = count(ysize, size);
+		this.xs = bounds(xsize, tx);
+		this.ys = bounds(ysize, ty);
+	}
+
+	/** Number of tiles along a side
+	 * @return one or an even number of tiles
+	 * */
+	private static int count(int length, int size) {
+		int n = Math.max(1, length / Math.max(1, size));
+		if (n > 1 && n % 2 == 1) n--;
+		return n;
+	}
+
+	/** Split a side in tiles of almost the same size
+	 * @return the first coordinate of each tile followed by the length of the side
+	 * */
+	private static int[] bounds(int length, int n) {
+		int[] b = new int[n + 1];
+		for (int i = 0; i <= n; i++) b[i] = (int)((long)i * length / n);
+		return b;
+	}
+
+/*********** Access Functions ****************************************************************************/
+
+	/** Get the number of tiles
+	 * @return the number of tiles
+	 * */
+	public int getnTiles() {
+		return this.tx * this.ty;
+	}
+
+	/** Get the tile that holds a cell of the grid
+	 * @param x the x-coordinate of the cell
+	 * @param y the y-coordinate of the cell
+	 * @return the index of the tile
+	 * */
+	public int tileAt(int x, int y) {
+		int i = (int)((long)x * tx / xsize);
+		while (xs[i + 1] <= x) i++;
+		while (xs[i] > x) i--;
+		int j = (int)((long)y * ty / ysize);
+		while (ys[j + 1] <= y) j++;
+		while (ys[j] > y) j--;
+		return j * tx + i;
+	}
+
+	/** Get the colour of a tile in the checkerboard
+	 * @param t the index of the tile
+	 * @return the colour, between 0 and 3
+	 * */
+	public int getColor(int t) {
+		return (t % tx) % 2 + 2 * ((t / tx) % 2);
+	}
+
+	/** Get the first x-coordinate of a tile
+	 * @param t the index of the tile
+	 * @return the coordinate
+	 * */
+	public int getX0(int t) {
+		return xs[t % tx];
+	}
+
+	/** Get the first y-coordinate of a tile
+	 * @param t the index of the tile
+	 * @return the coordinate
+	 * */
+	public int getY0(int t) {
+		return ys[t / tx];
+	}
+
+	/** Get the width of a tile
+	 * @param t the index of the tile
+	 * @return the width
+	 * */
+	public int getWidth(int t) {
+		return xs[t % tx + 1] - xs[t % tx];
+	}
+
+	/** Get the height of a tile
+	 * @param t the index of the tile
+	 * @return the height
+	 * */
+	public int getHeight(int t) {
+		return ys[t / tx + 1] - ys[t / tx];
+	}
+
+}
@@ -0,0 +1,58 @@
+package antcolony;
+
+/** Checks of the {@link AntColony}, run with the main method, that exits with an error on the first failure.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class AntColonyTest {
+
+	public static void main(String[] args) {
+		tiled();
+		System.out.println("AntColonyTest: ok");
+	}
+
+	/** A tiled run gives the same positions of the items and of the ants for a seed with any number of threads,
+	 * on a full grid and on a sparse grid where the ants jump out of empty tiles
+	 * */
+	static void tiled() {
+		for (Configuration.Models model : new Configuration.Models[]{Configuration.Models.LUMERFAIETA_S, Configuration.Models.LUMERFAIETA_R}) {
+			for (int nitems : new int[]{3000, 100}) {
+				long expected = run(model, nitems, 1);
+				for (int threads : new int[]{2, 4}) {
+					long h = run(model, nitems, threads);
+					check(h == expected, "tiled " + model + " with " + nitems + " items and " + threads + " threads");
+				}
+			}
+		}
+	}
+
+	/** Run a tiled simulation
+	 * @return a hash of the positions of the items and of the ants
+	 * */
+	private static long run(Configuration.Models model, int nitems, int threads) {
+		Configuration conf = new Configuration();
+		conf.setSeed(7);
+		conf.setThreads(threads);
+		conf.setxsize(150);
+		conf.setysize(150);
+		conf.setDataset(Configuration.Datasets.UNIFORM9);
+		conf.setnants(100);
+		conf.setnitems(nitems);
+		conf.setSchedule(Configuration.Schedules.TILED);
+		conf.setTileSize(25);
+		conf.setModel(model);
+		Simulation s = new Simulation(conf, null);
+		for (int t = 0; t < 200; t++) s.getColony().sort(t);
+		long h = 0;
+		for (Item it : s.getGrid().getItems()) h = h * 31 + it.getX() * 7919 + it.getY() + (it.isPicked() ? 1 : 0);
+		for (Ant ant : s.getColony().getAnts()) h = h * 31 + ant.getX() * 7919 + ant.getY();
+		return h;
+	}
+
+	private static void check(boolean ok, String message) {
+		if (!ok) throw new AssertionError(message);
+	}
+
+}
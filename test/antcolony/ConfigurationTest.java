@@ -0,0 +1,66 @@
+package antcolony;
+
+import java.util.concurrent.ForkJoinPool;
+
+/** Checks of the {@link Configuration}, run with the main method, that exits with an error on the first failure.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class ConfigurationTest {
+
+	public static void main(String[] args) {
+		threads();
+		parameters();
+		System.out.println("ConfigurationTest: ok");
+	}
+
+	/** The pool is kept when the number of threads does not change once clamped, and replaced when it changes
+	 * */
+	static void threads() {
+		Configuration conf = new Configuration();
+		conf.setThreads(1);
+		ForkJoinPool pool = conf.getPool();
+		conf.setThreads(0);
+		conf.setThreads(-1);
+		check(conf.getThreads() == 1, "threads " + conf.getThreads());
+		check(conf.getPool() == pool && !pool.isShutdown(), "pool kept for the same number of threads");
+		conf.setThreads(2);
+		check(pool.isShutdown(), "pool shut down for a new number of threads");
+		check(conf.getPool() != pool && conf.getPool().getParallelism() == 2, "pool of the new number of threads");
+		conf.getPool().shutdown();
+	}
+
+	/** The settings are reached through the keys of the table of parameters
+	 * */
+	static void parameters() {
+		Configuration conf = new Configuration();
+		conf.setParameters("Feature clusters", 2);
+		check(conf.getFeatureClusters() == Configuration.FeatureClusters.KMEANS_PARALLEL, "feature clusters " + conf.getFeatureClusters());
+		conf.setParameters("Feature clusters", 7);
+		check(conf.getFeatureClusters() == Configuration.FeatureClusters.KMEANS_PARALLEL, "feature clusters out of range " + conf.getFeatureClusters());
+		check(conf.getParameters().get("Feature clusters") == 2, "feature clusters in the table");
+		conf.setParameters("Distances", Configuration.Distances.LAZY.ordinal());
+		conf.setParameters("Cache size", 4096);
+		check(conf.getDistances() == Configuration.Distances.LAZY, "distances " + conf.getDistances());
+		check(conf.getCacheSize() == 4096, "cache size " + conf.getCacheSize());
+		check(conf.getParameters().get("Distances") == Configuration.Distances.LAZY.ordinal(), "distances in the table");
+		check(conf.getParameters().get("Cache size") == 4096, "cache size in the table");
+		conf.setModel(Configuration.Models.LUMERFAIETA_R);
+		conf.setParameters("Schedule", Configuration.Schedules.TILED.ordinal());
+		conf.setParameters("Pick budget", 50);
+		conf.setParameters("Pick batch", 8);
+		check(conf.getSchedule() == Configuration.Schedules.TILED, "schedule " + conf.getSchedule());
+		check(conf.getPickBudget() == 50 && conf.getPickBatch() == 8, "pick budget and batch " + conf.getPickBudget() + " " + conf.getPickBatch());
+		check(conf.getParameters().get("Schedule") == Configuration.Schedules.TILED.ordinal(), "schedule in the table");
+		check(conf.getParameters().get("Pick budget") == 50 && conf.getParameters().get("Pick batch") == 8, "pick budget and batch in the table");
+		conf.setModel(Configuration.Models.ANTCLASS1);
+		check(!conf.getParameters().containsKey("Schedule"), "schedule of the AntClass models");
+	}
+
+	private static void check(boolean ok, String message) {
+		if (!ok) throw new AssertionError(message);
+	}
+
+}
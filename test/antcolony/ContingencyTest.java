@@ -0,0 +1,44 @@
+package antcolony;
+
+import java.util.UUID;
+
+/** Checks of the measures of the {@link Contingency}, run with the main method, that exits with an error on the first failure.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class ContingencyTest {
+
+	public static void main(String[] args) {
+		rand();
+		System.out.println("ContingencyTest: ok");
+	}
+
+	/** The Rand and adjusted Rand indices of two classes of three items split in three clusters of two items.
+	 * Of the 15 pairs, 2 are in the same class and the same cluster, 6 in the same class and 3 in the same cluster,
+	 * so Rand is (15 - 6 - 3 + 2 * 2) / 15 and the adjusted Rand is (2 - 6 * 3 / 15) / ((6 + 3) / 2 - 6 * 3 / 15).
+	 * */
+	static void rand() {
+		Configuration conf = new Configuration();
+		String[] types = {"a", "b"};
+		ItemStore store = new ItemStore(6, 1);
+		Item[] it = new Item[6];
+		for (int i = 0; i < 6; i++) {
+			it[i] = new Item(UUID.randomUUID(), conf, types[i / 3], 0, new double[]{i});
+			store.add(it[i]);
+		}
+		Cluster[] clusters = {new Cluster(new Item[]{it[0], it[1]}), new Cluster(new Item[]{it[2], it[3]}), new Cluster(new Item[]{it[4], it[5]})};
+		Contingency c = new Contingency(store, types, clusters);
+		check(Math.abs(c.getRand() - 10.0 / 15) < 1e-12, "Rand index " + c.getRand());
+		check(Math.abs(c.getAdjustedRand() - 0.8 / 3.3) < 1e-12, "adjusted Rand index " + c.getAdjustedRand());
+		Cluster[] same = {new Cluster(new Item[]{it[0], it[1], it[2]}), new Cluster(new Item[]{it[3], it[4], it[5]})};
+		Contingency d = new Contingency(store, types, same);
+		check(d.getRand() == 1 && d.getAdjustedRand() == 1, "indices of the partition of the classes " + d.getRand() + " " + d.getAdjustedRand());
+	}
+
+	private static void check(boolean ok, String message) {
+		if (!ok) throw new AssertionError(message);
+	}
+
+}
@@ -0,0 +1,86 @@
+package antcolony;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.UUID;
+
+/** Checks of the measures of the {@link Evaluation}, run with the main method, that exits with an error on the first failure.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class EvaluationTest {
+
+	public static void main(String[] args) {
+		innerVariance();
+		featureClusters();
+		System.out.println("EvaluationTest: ok");
+	}
+
+	/** The inner cluster variance is the mean distance of the items in clusters to the true centroid of their cluster.
+	 * Cluster 1 holds (0,0), (2,0) and (4,0) around (2,0), cluster 2 holds (0,0) and (0,4) around (0,2),
+	 * and the last item is in no cluster, so the variance is (2 + 0 + 2 + 2 + 2) / 5.
+	 * */
+	static void innerVariance() {
+		Configuration conf = new Configuration();
+		double[][] data = {{0, 0}, {2, 0}, {4, 0}, {0, 0}, {0, 4}, {100, 100}};
+		ItemStore store = new ItemStore(data.length, 2);
+		for (double[] d : data) store.add(new Item(UUID.randomUUID(), conf, "a", 0, d));
+		int[] part = {1, 1, 1, 2, 2, 0};
+		double[] c = Evaluation.centroidsOf(store, part, 2);
+		check(c[0] == 2 && c[1] == 0, "centroid of cluster 1 (" + c[0] + ", " + c[1] + ")");
+		check(c[2] == 0 && c[3] == 2, "centroid of cluster 2 (" + c[2] + ", " + c[3] + ")");
+		double v = Evaluation.innerVariance(store, part, c);
+		check(Math.abs(v - 1.6) < 1e-12, "inner cluster variance " + v);
+		check(Double.isNaN(Evaluation.innerVariance(store, new int[data.length], c)), "inner cluster variance without clusters");
+	}
+
+	/** The comparison with K-Means in the data space is a stage only when the configuration asks for it.
+	 * Both seedings find the species of IRIS with this seed, K-Means stops with some seeds in the optimum
+	 * that splits setosa, and the clusters do not depend on the number of threads.
+	 * */
+	static void featureClusters() {
+		check(evaluation(Configuration.FeatureClusters.NONE, 1).getnStages() == 5, "stages without feature clusters");
+		for (Configuration.FeatureClusters f : new Configuration.FeatureClusters[]{Configuration.FeatureClusters.KMEANS_PP, Configuration.FeatureClusters.KMEANS_PARALLEL}) {
+			Evaluation e = evaluation(f, 1);
+			check(e.getnStages() == 6 && e.getStage(5) == Evaluation.FEATURE_RAND, "stage of the feature clusters " + f);
+			int[] parts = e.getFeatureParts();
+			Contingency c = new Contingency(e.getClasses(), 3, parts, clusters(e, parts));
+			check(c.getAdjustedRand() > 0.6, "feature clusters of IRIS against the species " + f + " " + c.getAdjustedRand());
+			double v = e.evaluate()[5];
+			check(v == e.computeFeatureRand() && v >= -1 && v <= 1, "feature Rand " + f + " " + v);
+			check(Arrays.equals(parts, evaluation(f, 4).getFeatureParts()), "feature clusters with 4 threads " + f);
+		}
+	}
+
+	private static Evaluation evaluation(Configuration.FeatureClusters f, int threads) {
+		Configuration conf = new Configuration();
+		conf.setSeed(1);
+		conf.setThreads(threads);
+		conf.setDataset(Configuration.Datasets.IRIS);
+		conf.setModel(Configuration.Models.LUMERFAIETA_S);
+		conf.setFeatureClusters(f);
+		Simulation s = new Simulation(conf, null);
+		s.getGrid().calculateClusters();
+		return new Evaluation(conf, s.getGrid());
+	}
+
+	/** The clusters of a partition given by the cluster of each item */
+	private static Cluster[] clusters(Evaluation e, int[] parts) {
+		int k = 0;
+		for (int p : parts) k = Math.max(k, p);
+		Cluster[] c = new Cluster[k];
+		for (int j = 0; j < k; j++) {
+			ArrayList<Item> list = new ArrayList<Item>();
+			for (int i = 0; i < parts.length; i++) if (parts[i] == j + 1) list.add(e.getGrid().getItems().get(i));
+			c[j] = new Cluster(list.toArray(new Item[0]));
+		}
+		return c;
+	}
+
+	private static void check(boolean ok, String message) {
+		if (!ok) throw new AssertionError(message);
+	}
+
+}
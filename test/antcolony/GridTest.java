@@ -0,0 +1,56 @@
+package antcolony;
+
+/** Checks of the {@link Grid}, run with the main method, that exits with an error on the first failure.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class GridTest {
+
+	public static void main(String[] args) {
+		wrappedDensity();
+		normal4();
+		System.out.println("GridTest: ok");
+	}
+
+	/** The density at a position outside the grid is the density at the same position wrapped around the grid
+	 * */
+	static void wrappedDensity() {
+		Configuration conf = new Configuration();
+		conf.setSeed(1);
+		conf.setDataset(Configuration.Datasets.IRIS);
+		conf.setModel(Configuration.Models.LUMERFAIETA_S);
+		Grid grid = new Simulation(conf, null).getGrid();
+		int xsize = conf.getxsize(), ysize = conf.getysize();
+		for (int x = 0; x < xsize; x += 7)
+			for (int y = 0; y < ysize; y += 7) {
+				double d = grid.densityRawAt(x, y);
+				check(grid.densityRawAt(x + xsize, y - ysize) == d, "density wrapped at " + x + "," + y);
+				check(grid.densityRawAt(x - 3 * xsize, y + 2 * ysize) == d, "density wrapped twice at " + x + "," + y);
+			}
+	}
+
+	/** The items of NORMAL4 start at positions that may lie outside the grid, the clusters are
+	 * still computed from the density at those positions
+	 * */
+	static void normal4() {
+		for (long seed = 6; seed <= 12; seed += 2) {
+			Configuration conf = new Configuration();
+			conf.setSeed(seed);
+			conf.setDataset(Configuration.Datasets.NORMAL4);
+			conf.setModel(Configuration.Models.LUMERFAIETA_S);
+			Simulation s = new Simulation(conf, null);
+			AntColony colony = s.getColony();
+			for (int t = 0; t < 100; t++) colony.sort(t);
+			colony.drop();
+			s.getGrid().calculateClusters();
+			check(s.getGrid().getClusters().length > 0, "clusters of NORMAL4 with seed " + seed);
+		}
+	}
+
+	private static void check(boolean ok, String message) {
+		if (!ok) throw new AssertionError(message);
+	}
+
+}
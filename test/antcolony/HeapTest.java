@@ -0,0 +1,62 @@
+package antcolony;
+
+import java.util.LinkedList;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/** Checks of the {@link Heap}, run with the main method, that exits with an error on the first failure.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class HeapTest {
+
+	public static void main(String[] args) {
+		maxDistance();
+		System.out.println("HeapTest: ok");
+	}
+
+	/** The maximum distance kept through puts, removals and merges is the maximum over all the pairs of items
+	 * */
+	static void maxDistance() {
+		Configuration conf = new Configuration();
+		conf.setnkeys(3);
+		SplittableRandom random = new SplittableRandom(5);
+		Heap h = new Heap(conf, 0, 0, item(conf, random), item(conf, random));
+		check(h.getMaxDistance() == scan(h), "maximum distance of two items");
+		for (int step = 0; step < 2000; step++) {
+			int op = random.nextInt(10);
+			if (op < 6 || h.getSize() < 3) h.putItem(item(conf, random));
+			else if (op < 9) {
+				LinkedList<Item> list = h.getItems();
+				Item r = list.get(random.nextInt(list.size()));
+				check(h.getItem(r.getID()) == r, "item removed");
+			}
+			else {
+				Heap o = new Heap(conf, 1, 1, item(conf, random), item(conf, random));
+				for (int k = random.nextInt(5); k > 0; k--) o.putItem(item(conf, random));
+				h.putItems(o);
+			}
+			check(h.getMaxDistance() == scan(h), "maximum distance at step " + step + " " + h.getMaxDistance() + " " + scan(h));
+		}
+	}
+
+	/** The maximum distance over all the pairs of items of a heap */
+	private static double scan(Heap h) {
+		Item[] a = h.getItems().toArray(new Item[0]);
+		double max = 0;
+		for (int i = 0; i < a.length; i++)
+			for (int j = i + 1; j < a.length; j++) max = Math.max(max, a[i].distance(a[j], 2));
+		return max;
+	}
+
+	private static Item item(Configuration conf, SplittableRandom random) {
+		return new Item(UUID.randomUUID(), conf, "a", 0, new double[]{random.nextDouble(), random.nextDouble(), random.nextDouble()});
+	}
+
+	private static void check(boolean ok, String message) {
+		if (!ok) throw new AssertionError(message);
+	}
+
+}
@@ -0,0 +1,54 @@
+package antcolony;
+
+import java.util.UUID;
+
+/** Checks of the {@link ItemStore}, run with the main method, that exits with an error on the first failure.
+ *
+ * @author      Antnio Fonseca
+ * @version     1.0
+ * @since       1.0
+ * */
+public class ItemStoreTest {
+
+	public static void main(String[] args) {
+		longerItem();
+		grow();
+		System.out.println("ItemStoreTest: ok");
+	}
+
+	/** An item with more values than the store keeps only the values of its row
+	 * */
+	static void longerItem() {
+		Configuration conf = new Configuration();
+		ItemStore store = new ItemStore(2, 2);
+		Item a = new Item(UUID.randomUUID(), conf, "a", 0, new double[]{1, 2, 100, 100});
+		Item b = new Item(UUID.randomUUID(), conf, "b", 0, new double[]{4, 6});
+		store.add(a);
+		store.add(b);
+		check(a.getDimension() == 2, "dimension of the longer item " + a.getDimension());
+		check(a.getData().length == 2, "data of the longer item " + a.getData().length);
+		check(a.getData(1) == 2, "value of the longer item " + a.getData(1));
+		check(a.distance(b, 2) == 5, "distance of the longer item " + a.distance(b, 2));
+		check(b.distance(a, 2) == 5, "distance to the longer item " + b.distance(a, 2));
+		check(store.distance(0, 1) == 5, "distance in the store " + store.distance(0, 1));
+		check(a.distance_vector(new double[]{1, 2}) == 0, "distance to a vector " + a.distance_vector(new double[]{1, 2}));
+	}
+
+	/** The items keep their data when the store grows
+	 * */
+	static void grow() {
+		Configuration conf = new Configuration();
+		ItemStore store = new ItemStore(1, 3);
+		for (int i = 0; i < 50; i++) store.add(new Item(UUID.randomUUID(), conf, "a", 0, new double[]{i, 2 * i, 3 * i}));
+		for (int i = 0; i < 50; i++) {
+			Item it = store.get(i);
+			check(it.getData(2) == 3 * i, "value of item " + i + " after growing " + it.getData(2));
+			check(it.distance(store.get(0), 2) == store.distance(i, 0), "distance of item " + i + " after growing");
+		}
+	}
+
+	private static void check(boolean ok, String message) {
+		if (!ok) throw new AssertionError(message);
+	}
+
+}